@@ -0,0 +1,54 @@
+/*
+ * AnalysisBenchmark.java
+ *
+ * The stages of Processor.analyze after the detection function, with the
+ * defaults of the algorithm of Runner: the peak picking and both tempo
+ * functions.
+ */
+package at.cp.jku.teaching.amprocessing;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * @author mru
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class AnalysisBenchmark {
+
+    @Benchmark
+    public List<Integer> pickPeaksDixon(BenchmarkAudio audio, FrameCounters counters) {
+        AnalysisConfig c = audio.config;
+        // the peak picking normalizes its input in place
+        List<Integer> peaks = audio.processor.pickPeaksDixon(audio.odf.clone(), c.getM(), c.getW(), c.getAlpha(),
+                c.getDelta());
+        counters.add(audio.frames, audio.hopTime);
+        return peaks;
+    }
+
+    @Benchmark
+    public double[] bdfAcf(BenchmarkAudio audio, FrameCounters counters) {
+        double[] r = audio.processor.bdf_acf(audio.normalized);
+        counters.add(audio.frames, audio.hopTime);
+        return r;
+    }
+
+    @Benchmark
+    public int[] bdfIoi(BenchmarkAudio audio, FrameCounters counters) {
+        int[] histogram = audio.processor.bdf_ioi(audio.onsets);
+        counters.add(audio.frames, audio.hopTime);
+        return histogram;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * BenchmarkAudio.java
+ *
+ * The input of the benchmarks, prepared once per trial: a wav file
+ * (-p wav=FILE) or, by default, a synthetic one of -p seconds=SECONDS:
+ * decaying tone bursts at 120 bpm over noise. Its spectrogram, with the
+ * phase planes computed once as in Processor, and the detection function
+ * and onsets of the algorithm of Runner with its default parameters.
+ */
+package at.cp.jku.teaching.amprocessing;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ *
+ * @author mru
+ */
+@State(Scope.Benchmark)
+public class BenchmarkAudio {
+
+    // the wav file, empty: a synthetic one
+    @Param("")
+    public String wav;
+    // the length of the synthetic file
+    @Param("30")
+    public double seconds;
+    String filename;
+    private File temporary;
+    Spectrogram spectrogram;
+    int frames;
+    double hopTime;
+    Processor processor;
+    AnalysisConfig config;
+    double[] odf;
+    // the detection function after the peak picking, as the tempo functions see it
+    double[] normalized;
+    List<Double> onsets;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Log.doLog = false;
+        if (wav.isEmpty()) {
+            temporary = File.createTempFile("benchmark", ".wav");
+            writeSyntheticWav(temporary, seconds);
+            filename = temporary.getPath();
+        } else {
+            filename = wav;
+        }
+
+        // the STFT as Processor computes it, without the cache
+        AudioFile audiofile = new AudioFile(filename, Processor.FFT_TIME, Processor.HOP_TIME, false);
+        audiofile.setParallel(true);
+        audiofile.processFile();
+        spectrogram = audiofile.spectrogram;
+        spectrogram.getSecondPhaseDifferences();
+        frames = spectrogram.size();
+        hopTime = audiofile.hopTime;
+
+        processor = new Processor(filename);
+        config = new AnalysisConfig(2);
+        odf = new OdfEngine(config.getAlgorithm()).compute(spectrogram)[config.getAlgorithm()];
+        normalized = odf.clone();
+        onsets = new ArrayList<Double>();
+        for (int peak : processor.pickPeaksDixon(normalized, config.getM(), config.getW(), config.getAlpha(),
+                config.getDelta())) {
+            onsets.add(peak * hopTime);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (temporary != null) {
+            temporary.delete();
+        }
+    }
+
+    /**
+     * writes seconds of 44.1 kHz, 16 bit mono audio: tone bursts at 120 bpm
+     * over noise
+     */
+    static void writeSyntheticWav(File file, double seconds) throws IOException {
+        final float rate = 44100;
+        final int n = (int) (seconds * rate);
+        final Random random = new Random(0);
+        final byte[] data = new byte[2 * n];
+        final int beat = (int) (rate / 2);
+        for (int i = 0; i < n; i++) {
+            int t = i % beat;
+            // a new pitch every beat
+            double f = 220.0 * (1 + (i / beat) % 4);
+            double x = 0.6 * Math.exp(-t / (0.05 * rate)) * Math.sin(2 * Math.PI * f * t / rate)
+                    + 0.02 * random.nextGaussian();
+            int s = (int) Math.max(-32768, Math.min(32767, Math.round(x * 32767)));
+            data[2 * i] = (byte) s;
+            data[2 * i + 1] = (byte) (s >> 8);
+        }
+        AudioFormat format = new AudioFormat(rate, 16, 1, true, false);
+        AudioInputStream in = new AudioInputStream(new ByteArrayInputStream(data), format, n);
+        AudioSystem.write(in, AudioFileFormat.Type.WAVE, file);
+    }
+}
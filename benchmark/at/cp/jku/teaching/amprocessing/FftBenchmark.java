@@ -0,0 +1,62 @@
+/*
+ * FftBenchmark.java
+ *
+ * FFT.fft of one frame of Gaussian noise at several sizes; a frame counts as
+ * HOP_TIME of audio.
+ */
+package at.cp.jku.teaching.amprocessing;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * @author mru
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FftBenchmark {
+
+    @Param({"256", "512", "1024", "2048", "4096"})
+    public int size;
+    private double[] re0;
+    private double[] im0;
+    private double[] re;
+    private double[] im;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        re0 = new double[size];
+        im0 = new double[size];
+        for (int i = 0; i < size; i++) {
+            re0[i] = random.nextGaussian();
+        }
+        re = new double[size];
+        im = new double[size];
+    }
+
+    @Benchmark
+    public double fft(FrameCounters counters) {
+        System.arraycopy(re0, 0, re, 0, size);
+        System.arraycopy(im0, 0, im, 0, size);
+        FFT.fft(re, im, FFT.FORWARD);
+        counters.add(1, Processor.HOP_TIME);
+        return re[1];
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * FrameCounters.java
+ *
+ * The frames and the seconds of audio a benchmark has processed; JMH reports
+ * them per second next to the operations: frames/s and the realtime factor
+ * (seconds of audio per second of computation).
+ */
+package at.cp.jku.teaching.amprocessing;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ *
+ * @author mru
+ */
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+@State(Scope.Thread)
+public class FrameCounters {
+
+    public long frames;
+    public double realtime;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        frames = 0;
+        realtime = 0;
+    }
+
+    void add(int n, double hopTime) {
+        frames += n;
+        realtime += n * hopTime;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * OdfBenchmark.java
+ *
+ * Every detection function on its own, and all ten in the one pass of
+ * OdfEngine (-p algorithm=all), over the spectrogram of BenchmarkAudio;
+ * with the fused scalar loop and with the vector kernels of OdfKernels
+ * (-p kernels=scalar,vector). The kernels change algorithms 1, 2, 4, 5, 9
+ * and 10.
+ */
+package at.cp.jku.teaching.amprocessing;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * @author mru
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Thread)
+public class OdfBenchmark {
+
+    @Param({"1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "all"})
+    public String algorithm;
+    @Param({"scalar", "vector"})
+    public String kernels;
+    private int[] algorithms;
+    private OdfKernels odfKernels;
+
+    @Setup
+    public void setup() {
+        if (algorithm.equals("all")) {
+            algorithms = new int[Odf.COUNT];
+            for (int i = 0; i < Odf.COUNT; i++) {
+                algorithms[i] = i + 1;
+            }
+        } else {
+            algorithms = new int[]{Integer.parseInt(algorithm)};
+        }
+        odfKernels = null;
+        if (kernels.equals("vector")) {
+            odfKernels = OdfKernels.vector();
+            if (odfKernels == null) {
+                throw new IllegalStateException("The vector kernels are not available, see OdfKernels");
+            }
+        }
+    }
+
+    @Benchmark
+    public double[][] compute(BenchmarkAudio audio, FrameCounters counters) {
+        OdfEngine engine = new OdfEngine(algorithms);
+        engine.setKernels(odfKernels);
+        double[][] odf = engine.compute(audio.spectrogram);
+        counters.add(audio.frames, audio.hopTime);
+        return odf;
+    }
+}
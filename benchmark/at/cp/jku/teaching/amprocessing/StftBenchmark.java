@@ -0,0 +1,44 @@
+/*
+ * StftBenchmark.java
+ *
+ * The STFT as Processor computes it, without the cache: AudioFile.processFile
+ * with the sequential STFT while decoding, and with ParallelStft.
+ */
+package at.cp.jku.teaching.amprocessing;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * @author mru
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StftBenchmark {
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    @Benchmark
+    public Spectrogram processFile(BenchmarkAudio audio, FrameCounters counters) {
+        AudioFile a = new AudioFile(audio.filename, Processor.FFT_TIME, Processor.HOP_TIME, false);
+        a.setParallel(parallel);
+        a.processFile();
+        counters.add(a.spectrogram.size(), a.hopTime);
+        return a.spectrogram;
+    }
+}
@@ -0,0 +1,18 @@
+#! /bin/bash -e
+
+
+# mru, 2011-06
+# runs the whole corpus in one JVM (see BatchRunner), instead of one java
+# process per file as run_eval.sh / run_paramstudy.sh / run_test.sh
+#
+# usage: run_batch.sh [MODES]   MODES: comma separated run,eval,paramstudy (default eval)
+#
+
+
+export CLASSPATH=build/classes:build/classes/jopt-simple.jar
+MODES=${1:-eval}
+
+ant
+
+mkdir -p output cache
+java at.cp.jku.teaching.amprocessing.BatchRunner -i data -o output -m $MODES -c cache -q
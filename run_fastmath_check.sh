@@ -0,0 +1,38 @@
+#! /bin/bash -e
+
+
+# mru, 2011-06
+# runs all algorithms with and without fast math (EvalRunner -f) and fails
+# if an onset F-measure differs by more than TOLERANCE
+#
+
+
+export CLASSPATH=build/classes:build/classes/jopt-simple.jar
+TOLERANCE=${TOLERANCE:-0.01}
+
+ant
+
+mkdir -p output/exact output/fast
+
+java at.cp.jku.teaching.amprocessing.FastMath
+
+for f in data/*.wav; do
+  mainclass=at.cp.jku.teaching.amprocessing.EvalRunner
+  basename=$(basename $f .wav)
+  java $mainclass -i $f -g data/$basename.onsets -o output/exact -c cache -q > /dev/null
+  java $mainclass -i $f -g data/$basename.onsets -o output/fast -c cache -q -f > /dev/null
+done
+
+FAILED=0
+for f in output/exact/*.onsets.fixedparam.eval; do
+  basename=$(basename $f)
+  paste -d ' ' $f output/fast/$basename | awk -v file=$basename -v tol=$TOLERANCE '
+    NR > 1 {
+      d = $7 - $14; if (d < 0) d = -d
+      printf "%s alg %d: %s %s\n", file, $1, $7, $14
+      if (d > tol) failed = 1
+    }
+    END { exit failed }' || FAILED=1
+done
+
+exit $FAILED
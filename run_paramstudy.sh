@@ -51,7 +51,7 @@ trap 'for i in $QUEUE; do kill $i; done;' EXIT
 for f in data/*.wav; do
   mainclass=at.cp.jku.teaching.amprocessing.ParamStudyRunner
   basename=$(basename $f .wav)
-  java $mainclass -i $f -g data/$basename.onsets -t data/$basename.bpms -o output -p output/$basename.odf -q &
+  java $mainclass -i $f -g data/$basename.onsets -t data/$basename.bpms -o output -p output/$basename.odf -c cache -q &
   	PID=$!
 	queue $PID
 
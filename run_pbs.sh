@@ -1,11 +1,23 @@
 #! /bin/bash -e
 
-# mru, 2011-05
+# mru, 2011-06
+# parameter study on the cluster: the coordinator runs here, the array tasks
+# are workers (run_pbs_single.sh) that take work units from the queue in the
+# shared directory until all are done, see QueueRunner.
+# an interrupted study continues when this is run again; rm -rf queue to
+# start a new one
+#
+# usage: run_pbs.sh [WORKERS]   (default 20)
+#
+
+export CLASSPATH=build/classes:build/classes/jopt-simple.jar
 
 ant
 
 BD=~/onset_detection
+WORKERS=${1:-20}
 
-qsub -t 1-20 -d $BD $BD/run_pbs_single.sh
-
-
+cd $BD
+mkdir -p output cache queue
+qsub -t 1-$WORKERS -d $BD $BD/run_pbs_single.sh
+java at.cp.jku.teaching.amprocessing.QueueRunner -d queue -i data -o output -q
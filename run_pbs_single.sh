@@ -6,18 +6,13 @@
 
 
 
-# mru, 2011-05
-# runs parameter study in parallel, MAX_NPROC processes at once
+# mru, 2011-06
+# one worker of the parameter study, see run_pbs.sh
 #
 
 export CLASSPATH=build/classes:build/classes/jopt-simple.jar
 
-f="data/train$(printf %02d ${PBS_ARRAYID}).wav"
-
 cd ~/onset_detection
 
-mainclass=at.cp.jku.teaching.amprocessing.ParamStudyRunner
-basename=$(basename $f .wav)
-java $mainclass -i $f -g data/$basename.onsets -t data/$basename.bpms -o output -p output/$basename.odf -q
-
-
+mainclass=at.cp.jku.teaching.amprocessing.QueueRunner
+java $mainclass -w -d queue -c cache -q
@@ -0,0 +1,28 @@
+#! /bin/bash -e
+
+
+# mru, 2011-06
+# parameter study with WORKERS worker JVMs on this machine, through the
+# same queue as run_pbs.sh (see QueueRunner)
+#
+# usage: run_queue.sh [WORKERS]   (default 4)
+#
+
+
+export CLASSPATH=build/classes:build/classes/jopt-simple.jar
+WORKERS=${1:-4}
+
+ant
+
+mkdir -p output cache queue
+
+PIDS=""
+trap 'for i in $PIDS; do kill $i 2>/dev/null || true; done;' EXIT
+
+for i in $(seq $WORKERS); do
+	java at.cp.jku.teaching.amprocessing.QueueRunner -w -d queue -c cache -j 1 -q &
+	PIDS="$PIDS $!"
+done
+
+java at.cp.jku.teaching.amprocessing.QueueRunner -d queue -i data -o output -q
+wait
@@ -0,0 +1,94 @@
+/*
+ * Acf.java
+ *
+ * Autocorrelation of a detection function for the tempo estimation, see
+ * Processor.bdf_acf().
+ *
+ * r(tau) = sum_k x(k + tau) * x(k) is computed for all lags at once as the
+ * inverse FFT of the power spectrum (Wiener-Khinchin). The signal is zero
+ * padded to at least length + maxLag, so the circular correlation of the
+ * FFT equals the linear one for the lags used. That is O(N log N) instead of
+ * O(N * lags).
+ *
+ * The FFT values differ from the direct sums by rounding errors of about
+ * eps * log2(fftSize) * r(0). All lags whose value lies within TOLERANCE *
+ * r(0) of the maximum are recomputed directly, so the maximum (and which
+ * lag has it) is exactly the one of the direct sums.
+ */
+package at.cp.jku.teaching.amprocessing;
+
+/**
+ *
+ * @author mru
+ */
+public class Acf {
+
+    // relative to r(0), far above the rounding error of the FFT
+    private static final double TOLERANCE = 1e-9;
+
+    private Acf() {
+    }
+
+    /**
+     * @param x the signal
+     * @param from the smallest lag
+     * @param to the largest lag + 1
+     * @return r, to values; r[tau] = 0 for tau < from
+     */
+    public static double[] compute(double[] x, int from, int to) {
+        final double[] r = new double[Math.max(to, 0)];
+        final int n = x.length;
+        final int last = Math.min(to, n);
+        if (from >= last) {
+            return r;
+        }
+
+        int size = 2;
+        while (size < n + to || size < 2 * to) {
+            size *= 2;
+        }
+        final RealFftPlan plan = new RealFftPlan(size);
+        final double[] padded = new double[size];
+        System.arraycopy(x, 0, padded, 0, n);
+        final double[] re = new double[size / 2 + 1];
+        final double[] im = new double[size / 2 + 1];
+        plan.fft(padded, re, im);
+
+        // the power spectrum is real and even, so its inverse FFT is its
+        // forward FFT divided by size
+        final double[] power = padded;
+        for (int k = 0; k <= size / 2; k++) {
+            power[k] = re[k] * re[k] + im[k] * im[k];
+        }
+        for (int k = size / 2 + 1; k < size; k++) {
+            power[k] = power[size - k];
+        }
+        plan.fft(power, re, im);
+
+        double max = Double.NEGATIVE_INFINITY;
+        for (int tau = from; tau < last; tau++) {
+            r[tau] = re[tau] / size;
+            max = Math.max(max, r[tau]);
+        }
+
+        // r(0) bounds every lag, the rounding error scales with it
+        final double bound = max - TOLERANCE * re[0] / size;
+        for (int tau = from; tau < last; tau++) {
+            if (r[tau] >= bound) {
+                r[tau] = direct(x, tau);
+            }
+        }
+        return r;
+    }
+
+    /**
+     * r(tau) as a direct sum, in the order of the original nested loop
+     */
+    static double direct(double[] x, int tau) {
+        double r_tau = 0.0;
+        for (int k = 0; k < x.length - tau; k++) {
+            r_tau += x[k + tau] * x[k];
+        }
+        return r_tau;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * AnalysisConfig.java
+ *
+ * The parameters of one run of Processor.analyze(AnalysisConfig): the
+ * detection function, the peak picking parameters (see
+ * Processor.pickPeaksDixon()) and the tempo estimation.
+ *
+ * A config cannot be changed after it is created, so any number of threads
+ * can share it; the with*() methods return a modified copy.
+ */
+package at.cp.jku.teaching.amprocessing;
+
+/**
+ *
+ * @author mru
+ */
+public final class AnalysisConfig {
+
+    // the tempo estimation, see Processor
+    public static final int TEMPO_NONE = 0;
+    public static final int TEMPO_ACF = 1;
+    public static final int TEMPO_IOI = 2;
+    private final int algorithm;
+    private final int m;
+    private final int w;
+    private final double alpha;
+    private final double delta;
+    private final int tempoAlgorithm;
+
+    /**
+     * the default peak picking parameters of the algorithm, tempo by
+     * autocorrelation
+     */
+    public AnalysisConfig(int algorithm) {
+        // the arguments are evaluated in order, so the tables are only
+        // indexed with a valid algorithm
+        this(checkAlgorithm(algorithm), Odf.DEFAULT_M[algorithm], Odf.DEFAULT_W[algorithm],
+                Odf.DEFAULT_ALPHA[algorithm], Odf.DEFAULT_DELTA[algorithm], TEMPO_ACF);
+    }
+
+    public AnalysisConfig(int algorithm, int m, int w, double alpha, double delta, int tempoAlgorithm) {
+        this.algorithm = checkAlgorithm(algorithm);
+        this.m = m;
+        this.w = w;
+        this.alpha = alpha;
+        this.delta = delta;
+        this.tempoAlgorithm = tempoAlgorithm;
+    }
+
+    private static int checkAlgorithm(int algorithm) {
+        if (algorithm < 1 || algorithm > Odf.COUNT) {
+            throw new IllegalArgumentException("Unknown algorithm: " + algorithm);
+        }
+        return algorithm;
+    }
+
+    public AnalysisConfig withPeakPicking(int m, int w, double alpha, double delta) {
+        return new AnalysisConfig(algorithm, m, w, alpha, delta, tempoAlgorithm);
+    }
+
+    public AnalysisConfig withTempoAlgorithm(int tempoAlgorithm) {
+        return new AnalysisConfig(algorithm, m, w, alpha, delta, tempoAlgorithm);
+    }
+
+    public int getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getM() {
+        return m;
+    }
+
+    public int getW() {
+        return w;
+    }
+
+    public double getAlpha() {
+        return alpha;
+    }
+
+    public double getDelta() {
+        return delta;
+    }
+
+    public int getTempoAlgorithm() {
+        return tempoAlgorithm;
+    }
+
+    @Override
+    public String toString() {
+        return "alg " + algorithm + " m " + m + " w " + w + " alpha " + alpha + " delta " + delta
+                + " tempo " + tempoAlgorithm;
+    }
+}
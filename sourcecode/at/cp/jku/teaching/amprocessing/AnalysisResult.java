@@ -0,0 +1,81 @@
+/*
+ * AnalysisResult.java
+ *
+ * The result of Processor.analyze(AnalysisConfig): the onsets, the tempo
+ * and the intermediate data of the run (for the plots of Runner).
+ *
+ * A result cannot be changed: the onset list is unmodifiable and the arrays
+ * are copied on the way out.
+ */
+package at.cp.jku.teaching.amprocessing;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *
+ * @author mru
+ */
+public final class AnalysisResult {
+
+    private final AnalysisConfig config;
+    private final List<Double> onsets;
+    private final double tempo;
+    private final double[] detectionFunction;
+    private final double[] acf;
+    private final int[] ioi;
+
+    /**
+     * the arrays are not copied, the caller must not keep them
+     */
+    AnalysisResult(AnalysisConfig config, List<Double> onsets, double tempo,
+            double[] detectionFunction, double[] acf, int[] ioi) {
+        this.config = config;
+        this.onsets = Collections.unmodifiableList(onsets);
+        this.tempo = tempo;
+        this.detectionFunction = detectionFunction;
+        this.acf = acf;
+        this.ioi = ioi;
+    }
+
+    public AnalysisConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * @return the onset times in seconds, ascending
+     */
+    public List<Double> getOnsets() {
+        return onsets;
+    }
+
+    /**
+     * @return the tempo in bpm, 0 without tempo estimation
+     */
+    public double getTempo() {
+        return tempo;
+    }
+
+    /**
+     * @return the normalized detection function
+     */
+    public double[] getDetectionFunction() {
+        return detectionFunction.clone();
+    }
+
+    /**
+     * @return the autocorrelation of the detection function, empty unless
+     * the tempo was estimated by autocorrelation
+     */
+    public double[] getAcf() {
+        return acf.clone();
+    }
+
+    /**
+     * @return the inter onset interval histogram, empty unless the tempo
+     * was estimated from it
+     */
+    public int[] getIoi() {
+        return ioi.clone();
+    }
+}
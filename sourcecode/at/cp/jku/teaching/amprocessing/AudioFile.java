@@ -5,8 +5,9 @@
  * After Initialization you have to call the process() method to do the feature extraction
  *
  * The most important variables for you are
- *   - LinkedList<SpectralData> spectralDataContainer (contains the data of the STFT)
- *   - LinkedList<Double> sampleDataContainer (contains the samples in the time domain)
+ *   - Spectrogram spectrogram (contains the data of the STFT)
+ *   - SampleBuffer sampleDataContainer (contains the samples in the time domain,
+ *     null if the AudioFile was created with keepSamples = false)
  * also:
  *   - double fftTime (in seconds, contains the size of the window which you set via the constructor)
  *   - double hopTime (in seconds, contains the hoptime (also set via the constructor)
@@ -14,6 +15,11 @@
  * hopSize and fftSize are automatically computed from the fftTime and the hopTime.
  * the fftsize is always a power of 2!
  *
+ * to work at multiple resolutions, pass several fftTimes and hopTimes to the
+ * constructor. the file is decoded only once, all resolutions share the
+ * sample buffer. the spectrogram of resolution r is getSpectrogram(r),
+ * spectrogram/fftTime/hopTime refer to resolution 0.
+ *
  * the signal is windowed using a hamming window
  *
  */
@@ -23,7 +29,6 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Arrays;
-import java.util.LinkedList;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
@@ -39,68 +44,122 @@ public class AudioFile {
     private int channels;
     private float sampleRate;
     private AudioInputStream pcmInputStream;
-    private int hopSize;
-    private int fftSize;
     private byte[] inputBuffer;
+    // the last samples, long enough for the largest fftSize
     private double[] circBuffer;
-    private double[] reBuffer;
-    private double[] imBuffer;
     private int cbIndex;
-    private double[] window;
+    private Resolution[] resolutions;
     private double frameRMS;
     private int frameCount;
+    private File file;
+    private SpectrogramCache cache;
+    // if true, the whole signal is decoded first and the STFT is computed by ParallelStft
+    private boolean parallel;
+    private boolean fastMath;
+    // if true, the spectrograms keep the real and imaginary parts
+    private boolean complex;
+    private double[] decoded;
+    private int decodedLength;
+    private Metrics metrics = new Metrics();
+    // the time in pcmInputStream.read() and the samples read
+    private long readNanos;
+    private long sampleCount;
+    private static final int WINDOW_TYPE = FFT.HAMMING;
     
     public double fftTime;
     public double hopTime;
-    public LinkedList<SpectralData> spectralDataContainer;
-    public LinkedList<Double> sampleDataContainer;
+    public Spectrogram spectrogram;
+    public SampleBuffer sampleDataContainer;
+
+    /**
+     * the parameters, buffers and results of the STFT at one resolution
+     */
+    private static class Resolution {
+
+        final double fftTime;
+        final double hopTime;
+        final int hopSize;
+        final int fftSize;
+        final double[] window;
+        final RealFftPlan fftPlan;
+        final double[] frameBuffer;
+        final double[] reBuffer;
+        final double[] imBuffer;
+        final double[] realBuffer;
+        final double[] imagBuffer;
+        // the number of samples since the last frame
+        int hopFill;
+        Spectrogram spectrogram;
+
+        Resolution(float sampleRate, double fftTime, double hopTime) {
+            this.fftTime = fftTime;
+            hopSize = hopSize(sampleRate, hopTime);
+            this.hopTime = hopSize / sampleRate;
+            fftSize = fftSize(sampleRate, fftTime);
+            window = analysisWindow(fftSize);
+            fftPlan = new RealFftPlan(fftSize);
+            frameBuffer = new double[fftSize];
+            reBuffer = new double[fftSize / 2 + 1];
+            imBuffer = new double[fftSize / 2 + 1];
+            realBuffer = new double[fftSize / 2 + 1];
+            imagBuffer = new double[fftSize / 2 + 1];
+            spectrogram = new Spectrogram(fftSize);
+        }
+    }
 
     public AudioFile(String filename, double fftTime, double hopTime) {
-        this.fftTime = fftTime;
-        this.hopTime = hopTime;
+        this(filename, fftTime, hopTime, true);
+    }
+
+    /**
+     * @param keepSamples if false, the time domain samples are not stored
+     * and sampleDataContainer stays null
+     */
+    public AudioFile(String filename, double fftTime, double hopTime, boolean keepSamples) {
+        this(filename, new double[]{fftTime}, new double[]{hopTime}, keepSamples);
+    }
+
+    /**
+     * computes the STFT at several resolutions from a single pass over the file
+     * @param fftTimes the window length of each resolution, in seconds
+     * @param hopTimes the hop time of each resolution, in seconds
+     * @param keepSamples if false, the time domain samples are not stored
+     * and sampleDataContainer stays null
+     */
+    public AudioFile(String filename, double[] fftTimes, double[] hopTimes, boolean keepSamples) {
+        if (fftTimes.length == 0 || fftTimes.length != hopTimes.length) {
+            throw new IllegalArgumentException("fftTimes and hopTimes must have the same, non-zero length");
+        }
+        this.fftTime = fftTimes[0];
+        this.hopTime = hopTimes[0];
         try {
             File audioFile = new File(filename);
+            file = audioFile;
 
             if (!audioFile.isFile()) {
                 throw new FileNotFoundException(
                         "Requested file does not exist: " + filename);
             }
             rawInputStream = AudioSystem.getAudioInputStream(audioFile);
-            audioFormat = rawInputStream.getFormat();
+            pcmInputStream = toPcm16(rawInputStream);
+            audioFormat = pcmInputStream.getFormat();
             channels = audioFormat.getChannels();
             sampleRate = audioFormat.getSampleRate();
-            pcmInputStream = rawInputStream;
-            if ((audioFormat.getEncoding() != AudioFormat.Encoding.PCM_SIGNED)
-                    || (audioFormat.getFrameSize() != channels * 2)
-                    || audioFormat.isBigEndian()) {
-                AudioFormat desiredFormat = new AudioFormat(
-                        AudioFormat.Encoding.PCM_SIGNED, sampleRate, 16,
-                        channels, channels * 2, sampleRate, false);
-                pcmInputStream = AudioSystem.getAudioInputStream(desiredFormat,
-                        rawInputStream);
-                audioFormat = desiredFormat;
-            }
 
+            resolutions = new Resolution[fftTimes.length];
+            int maxFftSize = 0;
+            for (int r = 0; r < resolutions.length; r++) {
+                resolutions[r] = new Resolution(sampleRate, fftTimes[r], hopTimes[r]);
+                maxFftSize = Math.max(maxFftSize, resolutions[r].fftSize);
+            }
+            this.hopTime = resolutions[0].hopTime;
 
-
-            hopSize = (int) Math.round(sampleRate * hopTime);
-	    this.hopTime = hopSize/sampleRate;
-            fftSize = (int) Math.round(Math.pow(2,
-                    Math.round(Math.log(fftTime * sampleRate) / Math.log(2))));
-
-            int buffSize = hopSize * channels * 2;
+            // the input is read in blocks of the hop size of resolution 0
+            int buffSize = resolutions[0].hopSize * channels * 2;
             if ((inputBuffer == null) || (inputBuffer.length != buffSize)) {
                 inputBuffer = new byte[buffSize];
             }
-            if ((circBuffer == null) || (circBuffer.length != fftSize)) {
-                circBuffer = new double[fftSize];
-                reBuffer = new double[fftSize];
-                imBuffer = new double[fftSize];
-                window = FFT.makeWindow(FFT.HAMMING, fftSize, fftSize);
-                for (int i = 0; i < fftSize; i++) {
-                    window[i] *= Math.sqrt(fftSize);
-                }
-            }
+            circBuffer = new double[maxFftSize];
 
 
             frameCount = 0;
@@ -109,8 +168,10 @@ public class AudioFile {
             cbIndex = 0;
             frameRMS = 0;
 
-            spectralDataContainer = new LinkedList<SpectralData>();
-            sampleDataContainer = new LinkedList<Double>();
+            spectrogram = resolutions[0].spectrogram;
+            if (keepSamples) {
+                sampleDataContainer = new SampleBuffer();
+            }
 
 
         } catch (Exception e) {
@@ -120,25 +181,94 @@ public class AudioFile {
 
     }
 
-    /** Reads a frame of input data, averages the channels to mono, scales
-     *  to a maximum possible absolute value of 1, and stores the audio data
-     *  in a circular input buffer.
-     *  @return true if a frame (or part of a frame, if it is the final frame)
-     *  is read. If a complete frame cannot be read, the InputStream is set
-     *  to null.
+    /** @return the number of resolutions */
+    public int getResolutionCount() {
+        return resolutions.length;
+    }
+
+    /** @return the spectrogram of resolution r */
+    public Spectrogram getSpectrogram(int r) {
+        return resolutions[r].spectrogram;
+    }
+
+    /** @return the window length of resolution r, in seconds */
+    public double getFftTime(int r) {
+        return resolutions[r].fftTime;
+    }
+
+    /** @return the (adjusted) hop time of resolution r, in seconds */
+    public double getHopTime(int r) {
+        return resolutions[r].hopTime;
+    }
+
+    /** Converts a stream to 16 bit signed little endian PCM, if it is not
+     *  in that format already.
+     */
+    static AudioInputStream toPcm16(AudioInputStream in) {
+        AudioFormat format = in.getFormat();
+        int channels = format.getChannels();
+        if ((format.getEncoding() != AudioFormat.Encoding.PCM_SIGNED)
+                || (format.getFrameSize() != channels * 2)
+                || format.isBigEndian()) {
+            AudioFormat desiredFormat = new AudioFormat(
+                    AudioFormat.Encoding.PCM_SIGNED, format.getSampleRate(), 16,
+                    channels, channels * 2, format.getSampleRate(), false);
+            return AudioSystem.getAudioInputStream(desiredFormat, in);
+        }
+        return in;
+    }
+
+    /** @return the hop size in samples for a hop time in seconds */
+    static int hopSize(float sampleRate, double hopTime) {
+        return (int) Math.round(sampleRate * hopTime);
+    }
+
+    /** @return the FFT size in samples for a window length in seconds,
+     *  rounded to the nearest power of 2
+     */
+    static int fftSize(float sampleRate, double fftTime) {
+        return (int) Math.round(Math.pow(2,
+                Math.round(Math.log(fftTime * sampleRate) / Math.log(2))));
+    }
+
+    /** @return the analysis window of the STFT: a hamming window, scaled by
+     *  sqrt(fftSize)
+     */
+    static double[] analysisWindow(int fftSize) {
+        double[] window = FFT.makeWindow(WINDOW_TYPE, fftSize, fftSize);
+        for (int i = 0; i < fftSize; i++) {
+            window[i] *= Math.sqrt(fftSize);
+        }
+        return window;
+    }
+
+    /** Reads a block of input data, averages the channels to mono, scales
+     *  to a maximum possible absolute value of 1, and passes every sample
+     *  to addSample().
+     *  The samples of a final incomplete block are still passed on: they
+     *  cannot complete a hop of resolution 0, but they may complete one
+     *  of a resolution with a longer hop.
+     *  @return true if a block is read, false if a complete block cannot
+     *  be read.
      */
     private boolean getFrame() {
         if (pcmInputStream == null) {
             return false;
         }
+        int length;
         try {
+            long start = System.nanoTime();
             int bytesRead = (int) pcmInputStream.read(inputBuffer);
+            readNanos += System.nanoTime() - start;
 
 
             if (bytesRead < inputBuffer.length) {
                 Log.log("End of input.\n");
-                return false;
+                pcmInputStream = null;
             }
+            length = Math.max(bytesRead, 0);
+            length -= length % (channels * 2);
+            sampleCount += length / (channels * 2);
         } catch (IOException e) {
             return false;
         }
@@ -146,66 +276,193 @@ public class AudioFile {
         double sample;
         switch (channels) {
             case 1:
-                for (int i = 0; i < inputBuffer.length; i += 2) {
+                for (int i = 0; i < length; i += 2) {
                     sample = ((inputBuffer[i + 1] << 8)
                             | (inputBuffer[i] & 0xff)) / 32768.0;
                     frameRMS += sample * sample;
-                    circBuffer[cbIndex++] = sample;
-                    sampleDataContainer.add(sample);
-                    if (cbIndex == fftSize) {
-                        cbIndex = 0;
-                    }
+                    addSample(sample);
                 }
                 break;
             case 2: // saves ~0.1% of RT (total input overhead ~0.4%) :)
-                for (int i = 0; i < inputBuffer.length; i += 4) {
+                for (int i = 0; i < length; i += 4) {
                     sample = (((inputBuffer[i + 1] << 8) | (inputBuffer[i] & 0xff))
                             + ((inputBuffer[i + 3] << 8) | (inputBuffer[i + 2] & 0xff))) / 65536.0;
                     frameRMS += sample * sample;
-                    circBuffer[cbIndex++] = sample;
-                    sampleDataContainer.add(sample);
-                    if (cbIndex == fftSize) {
-                        cbIndex = 0;
-                    }
+                    addSample(sample);
                 }
                 break;
             default:
-                for (int i = 0; i < inputBuffer.length;) {
+                for (int i = 0; i < length;) {
                     sample = 0;
                     for (int j = 0; j < channels; j++, i += 2) {
                         sample += (inputBuffer[i + 1] << 8) | (inputBuffer[i] & 0xff);
                     }
                     sample /= 32768.0 * channels;
                     frameRMS += sample * sample;
-                    circBuffer[cbIndex++] = sample;
-                    sampleDataContainer.add(sample);
-                    if (cbIndex == fftSize) {
-                        cbIndex = 0;
-                    }
+                    addSample(sample);
                 }
         }
         frameRMS = Math.sqrt(frameRMS / inputBuffer.length);
-        return true;
+        return pcmInputStream != null;
+    }
+
+    /** Stores a sample in the circular input buffer and computes a frame
+     *  for every resolution whose hop is complete. In parallel mode the
+     *  sample is only collected.
+     */
+    private void addSample(double sample) {
+        if (sampleDataContainer != null) {
+            sampleDataContainer.add(sample);
+        }
+        if (parallel) {
+            if (decodedLength == decoded.length) {
+                decoded = Arrays.copyOf(decoded, Math.max(decoded.length * 2, 1 << 16));
+            }
+            decoded[decodedLength++] = sample;
+            return;
+        }
+        circBuffer[cbIndex++] = sample;
+        if (cbIndex == circBuffer.length) {
+            cbIndex = 0;
+        }
+        for (int r = 0; r < resolutions.length; r++) {
+            Resolution res = resolutions[r];
+            if (++res.hopFill == res.hopSize) {
+                res.hopFill = 0;
+                processFrame(res);
+            }
+        }
+    }
+
+    /** Computes the STFT of the last fftSize samples at one resolution.
+     */
+    private void processFrame(Resolution res) {
+        final int fftSize = res.fftSize;
+        final double[] window = res.window;
+        final double[] frameBuffer = res.frameBuffer;
+        int index = cbIndex - fftSize;
+        if (index < 0) {
+            index += circBuffer.length;
+        }
+        for (int i = 0; i < fftSize; i++) {
+            frameBuffer[i] = window[i] * circBuffer[index];
+//            frameBuffer[i] = circBuffer[index];
+            if (++index == circBuffer.length) {
+                index = 0;
+            }
+        }
+        if (complex) {
+            res.fftPlan.fft(frameBuffer, res.realBuffer, res.imagBuffer);
+            res.fftPlan.polar(res.realBuffer, res.imagBuffer, res.reBuffer, res.imBuffer, fastMath);
+        } else {
+            res.fftPlan.magnitudePhaseFFT(frameBuffer, res.reBuffer, res.imBuffer, fastMath);
+        }
+        res.spectrogram.add(res.reBuffer, res.imBuffer, res.realBuffer, res.imagBuffer);
+    }
+
+    /** Enables the on-disk STFT cache for this file. A cached spectrogram
+     *  is only used if the time domain samples are not kept.
+     *  @param cache the cache, or null to disable caching
+     */
+    public void setCache(SpectrogramCache cache) {
+        this.cache = cache;
+    }
+
+    /** Selects the parallel STFT: the file is decoded completely first, then
+     *  the frames are computed on all cores by ParallelStft. The result is
+     *  the same as with the sequential STFT.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /** Computes the phases with FastMath.atan2() instead of Math.atan2(),
+     *  see FastMath for the error bound. Such spectrograms are cached
+     *  separately.
+     */
+    public void setFastMath(boolean fastMath) {
+        this.fastMath = fastMath;
+    }
+
+    /** Keeps the real and imaginary parts of the FFT in the spectrograms
+     *  (see Spectrogram), for the trig-free complex domain detection
+     *  functions in OdfEngine.
+     */
+    public void setComplex(boolean complex) {
+        this.complex = complex;
+    }
+
+    /** Collects the decoding and STFT times of processFile() in metrics.
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /** @return the number of samples per channel from the header, or
+     *  AudioSystem.NOT_SPECIFIED
+     */
+    private long frameLength() {
+        return pcmInputStream == null ? AudioSystem.NOT_SPECIFIED : pcmInputStream.getFrameLength();
     }
 
     /** Processes the Audio File
      * Reads Frames, computes the STFT and inserts Data into the spectral Container Object until EOF
      */
     public void processFile() {
-
-        while (getFrame()) {
-            for (int i = 0; i < fftSize; i++) {
-                reBuffer[i] = window[i] * circBuffer[cbIndex];
-//                reBuffer[i] = circBuffer[cbIndex];
-                if (++cbIndex == fftSize) {
-                    cbIndex = 0;
+        String[] cacheKeys = null;
+        if (cache != null && sampleDataContainer == null && file != null) {
+            Metrics.Timer timer = metrics.start(Metrics.CACHE);
+            cacheKeys = new String[resolutions.length];
+            Spectrogram[] cached = new Spectrogram[resolutions.length];
+            boolean hit = true;
+            for (int r = 0; r < resolutions.length; r++) {
+                Resolution res = resolutions[r];
+                cacheKeys[r] = cache.key(file, res.fftTime, res.hopTime, WINDOW_TYPE, fastMath);
+                if (cacheKeys[r] == null) {
+                    cacheKeys = null;
+                    hit = false;
+                    break;
+                }
+                cached[r] = cache.load(cacheKeys[r], res.fftSize, res.hopSize, complex);
+                hit &= cached[r] != null;
+            }
+            if (hit) {
+                Log.log("Using cached STFT for " + file);
+                for (int r = 0; r < resolutions.length; r++) {
+                    resolutions[r].spectrogram = cached[r];
                 }
+                spectrogram = resolutions[0].spectrogram;
+                frameCount = spectrogram.size();
+                timer.stop();
+                // nothing is decoded, the length from the header
+                long samples = frameLength();
+                if (samples == AudioSystem.NOT_SPECIFIED) {
+                    samples = (long) frameCount * resolutions[0].hopSize;
+                }
+                metrics.setAudio(samples, frameCount, frameCount * hopTime);
+                return;
             }
-            Arrays.fill(imBuffer, 0);
-            FFT.magnitudePhaseFFT(reBuffer, imBuffer);
-            SpectralData s = new SpectralData(reBuffer, imBuffer, fftSize);
-            spectralDataContainer.add(s);
+            timer.stop();
+        }
 
+        if (complex && !parallel) {
+            for (int r = 0; r < resolutions.length; r++) {
+                resolutions[r].spectrogram = new Spectrogram(resolutions[r].fftSize, true);
+            }
+            spectrogram = resolutions[0].spectrogram;
+        }
+        if (parallel) {
+            // presized from the header, grown only if it does not know the length
+            long samples = frameLength();
+            decoded = new double[samples == AudioSystem.NOT_SPECIFIED || samples > Integer.MAX_VALUE
+                    ? 1 << 16 : (int) samples];
+            decodedLength = 0;
+        }
+        // the sequential STFT is computed while decoding
+        Metrics.Timer timer = metrics.start(parallel ? Metrics.DECODE : Metrics.STFT);
+        readNanos = 0;
+        sampleCount = 0;
+        while (getFrame()) {
 
             frameCount++;
             if ((frameCount % 100) == 0) {
@@ -214,13 +471,36 @@ public class AudioFile {
             }
 
         }
-
-        for(int i = 0; i < spectralDataContainer.size(); i++) {
-            if(i == 0) {
-                Arrays.fill(spectralDataContainer.get(i).unwrappedPhases, 0);
-                continue;
+        if (parallel) {
+            timer.stop();
+            timer = metrics.start(Metrics.STFT);
+            for (int r = 0; r < resolutions.length; r++) {
+                Resolution res = resolutions[r];
+                res.spectrogram = ParallelStft.compute(decoded, decodedLength, res.fftSize, res.hopSize, res.window, res.fftPlan, fastMath, complex);
+            }
+            spectrogram = resolutions[0].spectrogram;
+            decoded = null;
+        }
+        for (int r = 0; r < resolutions.length; r++) {
+            resolutions[r].spectrogram.trim();
+        }
+        if (sampleDataContainer != null) {
+            sampleDataContainer.trim();
+        }
+        if (parallel) {
+            timer.stop();
+        } else {
+            timer.stop(readNanos);
+            metrics.record(Metrics.DECODE, readNanos, -1);
+        }
+        if (cacheKeys != null) {
+            timer = metrics.start(Metrics.CACHE);
+            for (int r = 0; r < resolutions.length; r++) {
+                Resolution res = resolutions[r];
+                cache.store(cacheKeys[r], res.spectrogram, res.fftSize, res.hopSize, res.hopTime);
             }
-            spectralDataContainer.get(i).computeUnwrappedPhases(spectralDataContainer.get(i-1).unwrappedPhases);
+            timer.stop();
         }
+        metrics.setAudio(sampleCount, spectrogram.size(), spectrogram.size() * hopTime);
     }
 }
@@ -0,0 +1,271 @@
+/*
+ * BatchRunner.java
+ *
+ * Runs Runner, EvalRunner and/or ParamStudyRunner for a whole corpus in one
+ * JVM, instead of one java process per wav file (run_eval.sh,
+ * run_paramstudy.sh, run_test.sh).
+ *
+ * Every track is a task on one ForkJoinPool. A track task computes the STFT
+ * (and all detection functions needed) once and runs the selected modes;
+ * these in turn put their algorithms or parameter sets on the same pool, so
+ * idle workers steal them from tracks that are still busy. The longest files
+ * are started first.
+ *
+ * The ground truth of data/NAME.wav is data/NAME.onsets and data/NAME.bpms,
+ * as in the scripts; a track without .onsets is only run in mode "run".
+ * The output files are the ones the scripts produce; an interrupted
+ * paramstudy continues from its ResultStore when the batch is run again.
+ * The stage times of all modes of a track go to NAME.metrics.json and
+ * NAME.metrics.csv (see Metrics).
+ */
+package at.cp.jku.teaching.amprocessing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+
+/**
+ *
+ * @author mru
+ */
+public class BatchRunner {
+
+    private BatchRunner() {
+    }
+
+    /**
+     * runs the tasks on the pool and waits for all of them; without a pool
+     * in the calling thread, one after the other
+     * @return the results, in the order of the tasks
+     */
+    static <T> List<T> invokeAll(ExecutorService pool, List<Callable<T>> tasks)
+            throws InterruptedException, ExecutionException {
+        List<T> results = new ArrayList<T>(tasks.size());
+        if (pool == null) {
+            for (Callable<T> task : tasks) {
+                try {
+                    results.add(task.call());
+                } catch (Exception ex) {
+                    throw new ExecutionException(ex);
+                }
+            }
+        } else {
+            for (Future<T> f : pool.invokeAll(tasks)) {
+                results.add(f.get());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * the wav files of a directory, or the files matching a glob such as
+     * data/train*.wav (only the file name may contain wildcards)
+     */
+    static List<File> wavFiles(String input) throws IOException {
+        Path path = Paths.get(input);
+        Path dir;
+        String glob;
+        if (Files.isDirectory(path)) {
+            dir = path;
+            glob = "*.wav";
+        } else {
+            dir = path.getParent() != null ? path.getParent() : Paths.get(".");
+            glob = path.getFileName().toString();
+        }
+
+        List<File> files = new ArrayList<File>();
+        DirectoryStream<Path> stream = Files.newDirectoryStream(dir, glob);
+        try {
+            for (Path p : stream) {
+                files.add(p.toFile());
+            }
+        } finally {
+            stream.close();
+        }
+        return files;
+    }
+
+    /**
+     * one track: the STFT and the detection functions are computed once for
+     * all modes
+     */
+    private static Callable<Boolean> track(final File wav, final String outputDirectory, final List<String> modes,
+            final SpectrogramCache cache, final boolean fastMath, final ExecutorService pool) {
+        return new Callable<Boolean>() {
+
+            @Override
+            public Boolean call() {
+                String name = wav.getName().substring(0, wav.getName().lastIndexOf("."));
+                File onsets = new File(wav.getParentFile(), name + ".onsets");
+                File bpms = new File(wav.getParentFile(), name + ".bpms");
+                try {
+                    List<Double> groundtruthOnsets = null;
+                    if (onsets.exists()) {
+                        groundtruthOnsets = OnsetEvaluation.readOnsets(onsets.getPath());
+                    }
+
+                    Processor p = new Processor(wav.getPath(), cache, fastMath);
+                    TreeSet<Integer> algorithms = new TreeSet<Integer>();
+                    if (groundtruthOnsets != null && modes.contains("eval")) {
+                        for (int alg : EvalRunner.ALGORITHMS) {
+                            algorithms.add(alg);
+                        }
+                    }
+                    if (groundtruthOnsets != null && modes.contains("paramstudy")) {
+                        for (int alg : ParamStudyRunner.ALGORITHMS) {
+                            algorithms.add(alg);
+                        }
+                    }
+                    int[] precompute = new int[algorithms.size()];
+                    int i = 0;
+                    for (int alg : algorithms) {
+                        precompute[i++] = alg;
+                    }
+                    p.precompute(precompute);
+
+                    if (modes.contains("run")) {
+                        // the same files as run_test.sh
+                        String base = outputDirectory + name;
+                        Runner.run(p, name, outputDirectory,
+                                onsets.exists() ? onsets.getPath() : null,
+                                bpms.exists() ? bpms.getPath() : null,
+                                base + ".odf", base + ".acf", base + ".ioi");
+                    }
+                    if (groundtruthOnsets != null && modes.contains("eval")) {
+                        EvalRunner.run(p, name, outputDirectory, groundtruthOnsets, pool);
+                    }
+                    if (groundtruthOnsets != null && modes.contains("paramstudy")) {
+                        ParamStudyRunner.run(p, name, outputDirectory, groundtruthOnsets, pool);
+                    }
+                    p.getMetrics().write(name, outputDirectory + name);
+                    return true;
+                } catch (Exception ex) {
+                    Logger.getLogger(BatchRunner.class.getName()).log(Level.SEVERE, wav.getPath(), ex);
+                    return false;
+                }
+            }
+        };
+    }
+
+    /*
+     * Options:
+     * -i DIR or GLOB (the wav files, e.g. data or 'data/train*.wav')
+     * -o DIR (the output directory)
+     * -m MODES (comma separated: run, eval, paramstudy; default eval)
+     * -c CACHEDIR (directory for cached STFTs, optional!)
+     * -f (fast math, see FastMath, optional!)
+     * -j THREADS (default: number of processors)
+     *
+     * exits with 1 if a track failed
+     */
+    public static void main(String[] args) {
+        OptionParser parser = new OptionParser("qfi:o:m:c:j:");
+        OptionSet options = parser.parse(args);
+
+        if (options.has("q")) {
+            Log.doLog = false;
+        }
+
+        if (!options.has("i")) {
+            Log.log("Input directory or pattern required! (-i INPUT)");
+            System.exit(1);
+        }
+
+        if (!options.has("o")) {
+            Log.log("Output Directory required! (-o OUTPUTDIR)");
+            System.exit(1);
+        }
+
+        String outputDirectory = options.valueOf("o").toString();
+        if (!new File(outputDirectory).exists()) {
+            Log.log("Output directory does not exist!");
+            System.exit(1);
+        }
+        if (!outputDirectory.endsWith("/")) {
+            outputDirectory = outputDirectory + "/";
+        }
+
+        List<String> modes = Arrays.asList("eval");
+        if (options.has("m")) {
+            modes = Arrays.asList(options.valueOf("m").toString().split(","));
+        }
+        for (String mode : modes) {
+            if (!mode.equals("run") && !mode.equals("eval") && !mode.equals("paramstudy")) {
+                Log.log("Unknown mode: " + mode);
+                System.exit(1);
+            }
+        }
+
+        SpectrogramCache cache = null;
+        if (options.has("c")) {
+            cache = new SpectrogramCache(new File(options.valueOf("c").toString()));
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (options.has("j")) {
+            threads = Integer.parseInt(options.valueOf("j").toString());
+        }
+
+        List<File> wavs = null;
+        try {
+            wavs = wavFiles(options.valueOf("i").toString());
+        } catch (IOException ex) {
+            Logger.getLogger(BatchRunner.class.getName()).log(Level.SEVERE, null, ex);
+            System.exit(1);
+        }
+        // the longest first, the short ones fill the gaps at the end
+        Collections.sort(wavs, new Comparator<File>() {
+
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(b.length(), a.length());
+            }
+        });
+        Log.log(wavs.size() + " files, " + threads + " threads");
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        int failed = 0;
+        try {
+            List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+            for (File wav : wavs) {
+                tasks.add(track(wav, outputDirectory, modes, cache, options.has("f"), pool));
+            }
+            for (boolean ok : invokeAll(pool, tasks)) {
+                if (!ok) {
+                    failed++;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Logger.getLogger(BatchRunner.class.getName()).log(Level.SEVERE, null, ex);
+            System.exit(1);
+        } catch (ExecutionException ex) {
+            Logger.getLogger(BatchRunner.class.getName()).log(Level.SEVERE, null, ex);
+            System.exit(1);
+        } finally {
+            pool.shutdown();
+        }
+
+        if (failed > 0) {
+            Log.log(failed + " of " + wavs.size() + " files failed");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * CoarseToFineSearch.java
+ *
+ * Coarse-to-fine refinement: a coarse grid over the search space (POINTS
+ * values per real range, every integer of short integer ranges), then
+ * LEVELS - 1 times a grid of the same size around the best parameter set so
+ * far, over +- half a grid step of the previous level (+- 1 for the
+ * integers). The real ranges shrink by a factor of POINTS - 1 per level, so
+ * the last level is much finer than the grid of ParamStudyRunner, at a
+ * fraction of its evaluations. Parameter sets of a previous level are not
+ * evaluated again.
+ */
+package at.cp.jku.teaching.amprocessing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ *
+ * @author mru
+ */
+public class CoarseToFineSearch extends ParameterSearch {
+
+    // values per range and level
+    public static final int POINTS = 4;
+    public static final int LEVELS = 4;
+    // integer ranges up to this size are searched completely
+    private static final int ALL_INTEGERS = 5;
+
+    public CoarseToFineSearch(SearchSpace space, List<ParameterSweep> sweeps, List<List<Double>> groundtruth,
+            ExecutorService pool, long seed) {
+        super(space, sweeps, groundtruth, pool, seed);
+    }
+
+    @Override
+    public Result search() throws InterruptedException, ExecutionException {
+        Map<String, Candidate> seen = new HashMap<String, Candidate>();
+        List<Candidate> all = new ArrayList<Candidate>();
+        SearchSpace s = space;
+
+        for (int level = 0; level < LEVELS; level++) {
+            int[] ms = integers(s.mMin, s.mMax);
+            int[] ws = integers(s.wMin, s.wMax);
+            double[] alphas = reals(s.alphaMin, s.alphaMax);
+            double[] deltas = reals(s.deltaMin, s.deltaMax);
+
+            List<Candidate> candidates = new ArrayList<Candidate>();
+            for (int m : ms) {
+                for (int w : ws) {
+                    for (double alpha : alphas) {
+                        for (double delta : deltas) {
+                            String key = m + " " + w + " " + alpha + " " + delta;
+                            if (!seen.containsKey(key)) {
+                                Candidate c = candidate(base.withPeakPicking(m, w, alpha, delta));
+                                seen.put(key, c);
+                                candidates.add(c);
+                            }
+                        }
+                    }
+                }
+            }
+            evaluate(candidates, tracks());
+            all.addAll(candidates);
+            sort(all, tracks());
+
+            AnalysisConfig best = all.get(0).config;
+            s = space.around(best, halfWidth(s.mMin, s.mMax), halfWidth(s.wMin, s.wMax),
+                    (s.alphaMax - s.alphaMin) / (POINTS - 1) / 2, (s.deltaMax - s.deltaMin) / (POINTS - 1) / 2);
+        }
+        return result(all);
+    }
+
+    private static int[] integers(int min, int max) {
+        if (max - min + 1 <= ALL_INTEGERS) {
+            int[] values = new int[max - min + 1];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = min + i;
+            }
+            return values;
+        }
+        int[] values = new int[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            values[i] = (int) Math.round(min + i * (max - min) / (double) (POINTS - 1));
+        }
+        return values;
+    }
+
+    private static int halfWidth(int min, int max) {
+        if (max - min + 1 <= ALL_INTEGERS) {
+            return 1;
+        }
+        return (int) Math.ceil((max - min) / (double) (POINTS - 1) / 2);
+    }
+
+    private static double[] reals(double min, double max) {
+        if (min == max) {
+            return new double[]{min};
+        }
+        double[] values = new double[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            values[i] = min + i * (max - min) / (POINTS - 1);
+        }
+        return values;
+    }
+}
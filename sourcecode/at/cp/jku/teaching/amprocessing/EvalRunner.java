@@ -13,10 +13,13 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
-import java.util.Iterator;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import joptsimple.OptionParser;
@@ -26,7 +29,8 @@ import joptsimple.OptionSet;
  *
  * runs all algorithms with the parameters specified by the algorithms.
  *
- * produces the output files "train??.onsets.fixedparam.eval"
+ * produces the output files "train??.onsets.fixedparam.eval", and the stage
+ * times in "train??.onsets.fixedparam.metrics.{json,csv}" (see Metrics)
  *
  * @author mru
  */
@@ -38,6 +42,8 @@ public class EvalRunner {
      * -o DIR (the directory in which the 2 resultfiles (WAVFILENAME.onsets and WAVEFILENAME.tempo) are written to
      * -g ONSETGROUNDTRUTHFILE (the file including the onset groundtruth, optional!)
      * -t TEMPOGROUNDTRUTHFILE (the file including the tempo groundtruth, optional!)
+     * -c CACHEDIR (directory for cached STFTs, optional!)
+     * -f (fast math: approximated trigonometry, see FastMath, optional!)
      *
      */
     public static void main(String[] args) {
@@ -46,7 +52,7 @@ public class EvalRunner {
         String outputDirectory = new String();
         String onsetGroundTruthFileName = new String();
 
-        OptionParser parser = new OptionParser("qi:o:g:t:p:");
+        OptionParser parser = new OptionParser("qfi:o:g:t:p:c:");
         OptionSet options = parser.parse(args);
 
         if (options.has("q")) {
@@ -80,138 +86,102 @@ public class EvalRunner {
 
         shortWavFileName = wavFileName.substring(wavFileName.lastIndexOf("/") + 1, wavFileName.lastIndexOf("."));
 
-        if (options.has("g")) {
-            onsetGroundTruthFileName = options.valueOf("g").toString();
-            loadGroundTruth(onsetGroundTruthFileName);
+        SpectrogramCache cache = null;
+        if (options.has("c")) {
+            cache = new SpectrogramCache(new File(options.valueOf("c").toString()));
         }
 
-
-        Processor p = new Processor(wavFileName);
-
-
-        String onsetEvalOut = outputDirectory + shortWavFileName + ".onsets.fixedparam.eval";
-        String gnuplotcomment = "";
-
-
-
         try {
-            FileWriter outputwriter = new FileWriter(onsetEvalOut);
-
-            outputwriter.append(gnuplotcomment + "alg TP FP FN PRECISION RECALL FMEASURE");
-            outputwriter.append('\n');
-
-            for (int alg = 1; alg <= 10; alg++) {
-
-                // pass all null-values: don't override the defaults of the algorithm
-                p.setup(alg, null, null, null, null);
-
-                p.analyze();
+            List<Double> groundtruthOnsets = new LinkedList<Double>();
+            if (options.has("g")) {
+                groundtruthOnsets = OnsetEvaluation.readOnsets(options.valueOf("g").toString());
+            }
 
-                String evalResult = evaluateOnsets(p.getOnsets());
+            Processor p = new Processor(wavFileName, cache, options.has("f"));
+            // all detection functions in one pass over the spectrogram
+            p.precompute(ALGORITHMS);
 
-                System.out.println("detection for " + shortWavFileName + " alg: " + alg + " -> " + m_fmeasure);
-                outputwriter.append(alg + " " + evalResult);
-                outputwriter.append('\n');
-            }
-            outputwriter.close();
+            run(p, shortWavFileName, outputDirectory, groundtruthOnsets, null);
+            p.getMetrics().write(shortWavFileName, outputDirectory + shortWavFileName + ".onsets.fixedparam");
 
         } catch (IOException ex) {
             Logger.getLogger(EvalRunner.class.getName()).log(Level.SEVERE, null, ex);
             System.exit(1);
-        } finally {
+        } catch (InterruptedException ex) {
+            Logger.getLogger(EvalRunner.class.getName()).log(Level.SEVERE, null, ex);
+            System.exit(1);
+        } catch (ExecutionException ex) {
+            Logger.getLogger(EvalRunner.class.getName()).log(Level.SEVERE, null, ex);
+            System.exit(1);
         }
 
     }
-    // read the groundtruth only once
-    private static LinkedList<Double> groundtruthOnsets_cache = null;
-    private static double m_fmeasure = 0.0;
+    // the algorithms of run()
+    static final int[] ALGORITHMS = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
 
-    private static void loadGroundTruth(String onsetGroundTruthFileName) {
-        groundtruthOnsets_cache = new LinkedList<Double>();
-        try {
-            BufferedReader reader = new BufferedReader(new FileReader(onsetGroundTruthFileName));
-            String line;
+    /**
+     * runs all algorithms with their default parameters and writes
+     * DIR/NAME.onsets.fixedparam.eval
+     * @param pool runs the algorithms in parallel, null: one after the other
+     */
+    static void run(final Processor p, final String shortWavFileName, String outputDirectory,
+            final List<Double> groundtruthOnsets, ExecutorService pool)
+            throws IOException, InterruptedException, ExecutionException {
 
-            while ((line = reader.readLine()) != null) {
-                StringTokenizer st = new StringTokenizer(line);
-                groundtruthOnsets_cache.add(Double.parseDouble(st.nextToken()));
-            }
-        } catch (IOException ex) {
-            Logger.getLogger(EvalRunner.class.getName()).log(Level.SEVERE, null, ex);
-            System.exit(1);
+        String onsetEvalOut = outputDirectory + shortWavFileName + ".onsets.fixedparam.eval";
+        String gnuplotcomment = "";
+
+        List<Callable<OnsetEvaluation>> tasks = new ArrayList<Callable<OnsetEvaluation>>();
+        for (final int alg : ALGORITHMS) {
+            tasks.add(new Callable<OnsetEvaluation>() {
+
+                @Override
+                public OnsetEvaluation call() {
+                    AnalysisResult result = p.analyze(new AnalysisConfig(alg));
+                    Metrics.Timer timer = p.getMetrics().start(Metrics.EVALUATION);
+                    OnsetEvaluation e = OnsetEvaluation.evaluate(groundtruthOnsets, result.getOnsets());
+                    timer.stop();
+                    System.out.println("detection for " + shortWavFileName + " alg: " + alg + " -> " + e.getFMeasure());
+                    return e;
+                }
+            });
         }
-    }
+        List<OnsetEvaluation> evaluations = BatchRunner.invokeAll(pool, tasks);
 
-    // Evaluate the Onset Estimations
-    private static String evaluateOnsets(LinkedList<Double> onsets) {
-
-        int TP = 0;
-        int FP = 0;
-        int FN = 0;
-        double precision = 0;
-        double recall = 0;
-        double fmeasure = 0;
-
-        List<Double> groundtruthOnsets = new LinkedList<Double>();
-        groundtruthOnsets.addAll(groundtruthOnsets_cache);
-
-//        Log.log(onsets.size());
-//        Log.log(groundtruthOnsets.size());
-
-        Iterator<Double> it = groundtruthOnsets.iterator();
-        while (it.hasNext()) {
-            double d = it.next();
-            double tmp = findNearest(d, onsets);
-            if (Math.abs(d - tmp) <= 0.05) {
-                onsets.remove(tmp);
-                it.remove();
-                TP++;
-            }
+        Metrics.Timer timer = p.getMetrics().start(Metrics.OUTPUT);
+        FileWriter outputwriter = new FileWriter(onsetEvalOut);
 
-        }
-        FN = groundtruthOnsets.size();
-        FP = onsets.size();
+        outputwriter.append(gnuplotcomment + "alg TP FP FN PRECISION RECALL FMEASURE");
+        outputwriter.append('\n');
 
-//        Log.log(onsets.size());
-//        Log.log(groundtruthOnsets.size());
+        for (int i = 0; i < ALGORITHMS.length; i++) {
+            outputwriter.append(ALGORITHMS[i] + " " + evaluationLine(evaluations.get(i)));
+            outputwriter.append('\n');
+        }
+        outputwriter.close();
+        timer.stop();
+    }
 
-        precision = (double) TP / (TP + FP);
-        recall = (double) TP / (TP + FN);
-        fmeasure = (2 * precision * recall) / (precision + recall);
+    // TP FP FN PRECISION RECALL FMEASURE
+    private static String evaluationLine(OnsetEvaluation e) {
+        NumberFormat fd = new DecimalFormat("#.###");
 
         StringBuilder sb = new StringBuilder();
-        sb.append(TP);
+        sb.append(e.getTP());
         sb.append(" ");
-        sb.append(FP);
+        sb.append(e.getFP());
         sb.append(" ");
-        sb.append(FN);
+        sb.append(e.getFN());
         sb.append(" ");
-        sb.append(fd.format(precision));
+        sb.append(fd.format(e.getPrecision()));
         sb.append(" ");
-        sb.append(fd.format(recall));
+        sb.append(fd.format(e.getRecall()));
         sb.append(" ");
-        sb.append(fd.format(fmeasure));
+        sb.append(fd.format(e.getFMeasure()));
 
-        EvalRunner.m_fmeasure = fmeasure;
         return sb.toString();
-
     }
 
-    private static NumberFormat fd = new DecimalFormat("#.###");
-
-    private static double findNearest(double val, List<Double> list) {
-        double minDist = Double.MAX_VALUE;
-        double retval = 0;
-
-        for (Double d : list) {
-            if (Math.abs(val - d) < minDist) {
-                minDist = Math.abs(val - d);
-                retval = d;
-            }
-        }
-        return retval;
-
-    }
 
     // Evaluate the Tempo Estimation
     private static void evaluateTempo(double tempo, String tempoGroundTruthFileName, String tempoEvalOut) {
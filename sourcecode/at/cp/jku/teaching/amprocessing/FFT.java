@@ -378,6 +378,37 @@ public class FFT {
             err += Math.abs(r1[j] - r2[j] / SZ) + Math.abs(i1[j] - i2[j] / SZ);
         }
         System.out.printf("Err: %12.10f   Av: %12.10f\n", err, err / SZ);
+
+        // the precomputed plan must agree with fft()
+        FftPlan plan = new FftPlan(SZ);
+        for (int j = 0; j < SZ; j++) {
+            r2[j] = r1[j];
+            i2[j] = i1[j];
+        }
+        Log.log("plan");
+        fft(r1, i1, FORWARD);
+        plan.fft(r2, i2, FORWARD);
+        err = 0;
+        for (int j = 0; j < SZ; j++) {
+            err += Math.abs(r1[j] - r2[j]) + Math.abs(i1[j] - i2[j]);
+        }
+        System.out.printf("Plan Err: %12.10f   Av: %12.10f\n", err, err / SZ);
+
+        // the real plan must agree with fft() on real data
+        RealFftPlan realPlan = new RealFftPlan(SZ);
+        double[] x = new double[SZ];
+        for (int j = 0; j < SZ; j++) {
+            x[j] = r1[j] = Math.random();
+            i1[j] = 0;
+        }
+        Log.log("real plan");
+        fft(r1, i1, FORWARD);
+        realPlan.fft(x, r2, i2);
+        err = 0;
+        for (int j = 0; j <= SZ / 2; j++) {
+            err += Math.abs(r1[j] - r2[j]) + Math.abs(i1[j] - i2[j]);
+        }
+        System.out.printf("Real Plan Err: %12.10f   Av: %12.10f\n", err, err / SZ);
     } // main()
 } // class FFT
 
@@ -0,0 +1,132 @@
+/*
+ * FastMath.java
+ *
+ * Approximations of the functions that dominate the inner bin loops, for the
+ * opt-in fast-math mode (AudioFile.setFastMath(), OdfEngine.setFastMath()).
+ *
+ * Maximum errors (absolute, checked by main()):
+ *   floor, normalizeAngle   exact for |x| < 2^62 (finite arguments only)
+ *   cos                     3e-7 (table of COS_TABLE_SIZE values, linear
+ *                           interpolation)
+ *   atan2                   5e-8 rad (odd polynomial of degree 15 on
+ *                           [0, 1], Abramowitz/Stegun 4.4.49)
+ *   radialDistance          the squared distance is off by at most
+ *                           2 * m1 * m2 * 3e-7
+ *
+ * The default mode keeps using java.lang.Math, so its results do not change.
+ * run_fastmath_check.sh compares the onset F-measures of both modes on the
+ * files in data/.
+ */
+package at.cp.jku.teaching.amprocessing;
+
+/**
+ *
+ * @author mru
+ */
+public class FastMath {
+
+    public static final double COS_ERROR = 3e-7;
+    public static final double ATAN2_ERROR = 5e-8;
+    private static final double TWO_PI = 2 * Math.PI;
+    private static final double HALF_PI = Math.PI / 2;
+    private static final int COS_TABLE_SIZE = 4096;
+    private static final double COS_SCALE = COS_TABLE_SIZE / TWO_PI;
+    // cos over [0, 2 pi], one extra value so that index + 1 is always valid
+    private static final double[] COS_TABLE = new double[COS_TABLE_SIZE + 1];
+
+    static {
+        for (int i = 0; i <= COS_TABLE_SIZE; i++) {
+            COS_TABLE[i] = Math.cos(i / COS_SCALE);
+        }
+    }
+
+    private FastMath() {
+    }
+
+    /**
+     * Math.floor() for finite |x| < 2^62, without the NaN/infinity handling
+     */
+    public static double floor(final double x) {
+        final double t = (long) x;
+        return t > x ? t - 1.0 : t;
+    }
+
+    /**
+     * SpectralData.normalizeAngle() with floor()
+     */
+    public static double normalizeAngle(final double a, final double center) {
+        return a - TWO_PI * floor((a + Math.PI - center) / TWO_PI);
+    }
+
+    public static double cos(final double x) {
+        double t = Math.abs(x) * COS_SCALE;
+        t -= COS_TABLE_SIZE * floor(t / COS_TABLE_SIZE);
+        final int i = (int) t;
+        final double f = t - i;
+        return COS_TABLE[i] + f * (COS_TABLE[i + 1] - COS_TABLE[i]);
+    }
+
+    public static double atan2(final double y, final double x) {
+        final double ax = Math.abs(x);
+        final double ay = Math.abs(y);
+        if (ax == 0.0 && ay == 0.0) {
+            return 0.0;
+        }
+        double r;
+        if (ax >= ay) {
+            r = atan01(ay / ax);
+        } else {
+            r = HALF_PI - atan01(ax / ay);
+        }
+        if (x < 0) {
+            r = Math.PI - r;
+        }
+        return y < 0 ? -r : r;
+    }
+
+    // atan(z) for 0 <= z <= 1
+    private static double atan01(final double z) {
+        final double z2 = z * z;
+        return z * (0.9999993329 + z2 * (-0.3332985605 + z2 * (0.1994653599 + z2 * (-0.1390853351
+                + z2 * (0.0964200441 + z2 * (-0.0559098861 + z2 * (0.0218612288 + z2 * -0.0040540580)))))));
+    }
+
+    /**
+     * Odf.radialDistance() with cos(); the squared distance is clamped to 0,
+     * the approximation error could make it negative for nearly equal points
+     */
+    public static double radialDistance(final double m1, final double phi1, final double m2, final double phi2) {
+        return Math.sqrt(Math.max(0.0, m1 * m1 + m2 * m2 - 2 * m1 * m2 * cos(phi1 - phi2)));
+    }
+
+    /*
+     * measures the maximum errors against java.lang.Math and exits with 1 if
+     * one exceeds the documented bound
+     */
+    public static void main(String[] args) {
+        final int steps = 1 << 22;
+        double cosError = 0.0;
+        double floorError = 0.0;
+        for (int i = 0; i <= steps; i++) {
+            double x = -8 * Math.PI + 16 * Math.PI * i / steps;
+            cosError = Math.max(cosError, Math.abs(cos(x) - Math.cos(x)));
+            floorError = Math.max(floorError, Math.abs(floor(x * 1e3) - Math.floor(x * 1e3)));
+            floorError = Math.max(floorError, Math.abs(normalizeAngle(x, 1.0) - SpectralData.normalizeAngle(x, 1.0)));
+        }
+        double atanError = 0.0;
+        for (int i = 0; i < steps; i++) {
+            double a = TWO_PI * i / steps;
+            double r = 1e-3 + i % 1000;
+            double y = r * Math.sin(a);
+            double x = r * Math.cos(a);
+            double d = Math.abs(atan2(y, x) - Math.atan2(y, x));
+            atanError = Math.max(atanError, Math.min(d, TWO_PI - d));
+        }
+        System.out.println("floor/normalizeAngle: " + floorError);
+        System.out.println("cos: " + cosError + " (bound " + COS_ERROR + ")");
+        System.out.println("atan2: " + atanError + " (bound " + ATAN2_ERROR + ")");
+        if (floorError != 0.0 || cosError > COS_ERROR || atanError > ATAN2_ERROR) {
+            System.exit(1);
+        }
+    }
+}
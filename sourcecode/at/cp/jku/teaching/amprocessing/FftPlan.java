@@ -0,0 +1,120 @@
+/*
+ * FftPlan.java
+ */
+package at.cp.jku.teaching.amprocessing;
+
+/** A precomputed FFT of a fixed size.
+ *  {@link FFT#fft(double[], double[], int)} recomputes the bit count, the
+ *  bit-reversal permutation and the twiddle factors on every call. A plan
+ *  computes them once, so the butterfly loop of
+ *  {@link #fft(double[], double[], int)} is free of transcendental calls.
+ *  A plan is immutable and may be shared between threads.
+ */
+public class FftPlan {
+
+    private final int n;
+    private final int bits;
+    // pairs of indices (i, j), i < j, that are swapped by the bit-reversal
+    private final int[] swaps;
+    // cos and sin of 2 * PI * k / n for k = 0 .. n/2 - 1
+    private final double[] cos;
+    private final double[] sin;
+
+    /** Creates a plan for FFTs of size n.
+     *  @param n the size of the FFT
+     *  @throws IllegalArgumentException if n is not a power of 2
+     */
+    public FftPlan(int n) {
+        if (n < 1 || (n & (n - 1)) != 0) {
+            throw new IllegalArgumentException("FFT data must be power of 2");
+        }
+        this.n = n;
+        this.bits = Integer.numberOfTrailingZeros(n);
+
+        int count = 0;
+        int[] pairs = new int[n];
+        for (int i = 0; i < n; i++) {
+            int j = reverse(i);
+            if (i < j) {
+                pairs[count++] = i;
+                pairs[count++] = j;
+            }
+        }
+        swaps = new int[count];
+        System.arraycopy(pairs, 0, swaps, 0, count);
+
+        cos = new double[Math.max(n / 2, 1)];
+        sin = new double[Math.max(n / 2, 1)];
+        for (int k = 0; k < n / 2; k++) {
+            double theta = FFT.twoPI * k / n;
+            cos[k] = Math.cos(theta);
+            sin[k] = Math.sin(theta);
+        }
+    }
+
+    /** @return the size of the FFT */
+    public int size() {
+        return n;
+    }
+
+    private int reverse(int i) {
+        return bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+    }
+
+    /** The FFT method. Calculation is inline, for complex data stored
+     *  in 2 separate arrays. Only the first size() values of the arrays
+     *  are transformed.
+     *  @param re        the real part of the complex input and output data
+     *  @param im        the imaginary part of the complex input and output data
+     *  @param direction the direction of the Fourier transform (FFT.FORWARD or
+     *  FFT.REVERSE)
+     */
+    public void fft(double re[], double im[], int direction) {
+        if (re.length < n || im.length < n) {
+            throw new IllegalArgumentException("FFT data too short for the plan: " + n);
+        }
+        for (int s = 0; s < swaps.length; s += 2) {
+            int i = swaps[s];
+            int j = swaps[s + 1];
+            double temp = re[j];
+            re[j] = re[i];
+            re[i] = temp;
+            temp = im[j];
+            im[j] = im[i];
+            im[i] = temp;
+        }
+        for (int localN = 2; localN <= n; localN <<= 1) {
+            int nby2 = localN / 2;
+            int stride = n / localN;
+            for (int j = 0; j < nby2; j++) {
+                double Wjk_r = cos[j * stride];
+                double Wjk_i = direction * sin[j * stride];
+                for (int k = j; k < n; k += localN) {
+                    int id = k + nby2;
+                    double tempr = Wjk_r * re[id] - Wjk_i * im[id];
+                    double tempi = Wjk_r * im[id] + Wjk_i * re[id];
+                    re[id] = re[k] - tempr;
+                    im[id] = im[k] - tempi;
+                    re[k] += tempr;
+                    im[k] += tempi;
+                }
+            }
+        }
+    } // fft()
+
+    /** Computes a complex (or real if im[] == {0,...}) FFT and converts
+     *  the results to polar coordinates (magnitude and phase).
+     *  @param re the real part of the input data and the magnitude of the
+     *  output data
+     *  @param im the imaginary part of the input data and the phase of the
+     *  output data
+     */
+    public void magnitudePhaseFFT(double[] re, double[] im) {
+        fft(re, im, FFT.FORWARD);
+        for (int i = 0; i < n; i++) {
+            double mag = Math.sqrt(re[i] * re[i] + im[i] * im[i]);
+            im[i] = Math.atan2(im[i], re[i]);
+            re[i] = mag;
+        }
+    } // magnitudePhaseFFT()
+} // class FftPlan
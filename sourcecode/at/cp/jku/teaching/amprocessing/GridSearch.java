@@ -0,0 +1,46 @@
+/*
+ * GridSearch.java
+ *
+ * The full grid, as ParamStudyRunner: every m and w, alpha and delta in
+ * steps of STEP from the lower bound up to the upper bound. On
+ * SearchSpace.GRID these are exactly the parameter sets of
+ * ParamStudyRunner; the reference the other strategies are measured
+ * against.
+ */
+package at.cp.jku.teaching.amprocessing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ *
+ * @author mru
+ */
+public class GridSearch extends ParameterSearch {
+
+    public static final double STEP = 0.1;
+
+    public GridSearch(SearchSpace space, List<ParameterSweep> sweeps, List<List<Double>> groundtruth,
+            ExecutorService pool, long seed) {
+        super(space, sweeps, groundtruth, pool, seed);
+    }
+
+    @Override
+    public Result search() throws InterruptedException, ExecutionException {
+        List<Candidate> candidates = new ArrayList<Candidate>();
+        for (int m = space.mMin; m <= space.mMax; m += 1) {
+            for (int w = space.wMin; w <= space.wMax; w += 1) {
+                // the same accumulated values as the loops of ParamStudyRunner
+                for (double delta = space.deltaMin; delta < space.deltaMax + STEP / 2; delta += STEP) {
+                    for (double alpha = space.alphaMin; alpha < space.alphaMax + STEP / 2; alpha += STEP) {
+                        candidates.add(candidate(base.withPeakPicking(m, w, alpha, delta)));
+                    }
+                }
+            }
+        }
+        evaluate(candidates, tracks());
+        return result(candidates);
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Metrics.java
+ *
+ * The time, the number of calls and the allocated bytes of every stage of
+ * the analysis of one track, and the number of samples and frames; written
+ * as NAME.metrics.json and NAME.metrics.csv (a header and one line, so the
+ * lines of a corpus can be joined) by the runners.
+ *
+ * A stage is measured with start() and Timer.stop() in the same thread; the
+ * stages of parallel tasks add up, so the sum of the stages may exceed the
+ * wall time. The allocated bytes are those of the measuring thread (see
+ * com.sun.management.ThreadMXBean), -1 if the JVM does not count them; the
+ * work a stage hands to other threads (the parallel STFT) is timed, but its
+ * allocations are not counted.
+ *
+ * The realtime factor is seconds of audio per second of wall time, from the
+ * creation of the Metrics (with the Processor) to write().
+ */
+package at.cp.jku.teaching.amprocessing;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *
+ * @author mru
+ */
+public final class Metrics {
+
+    // wav decoding
+    public static final int DECODE = 0;
+    // the STFT, one call per computed spectrogram
+    public static final int STFT = 1;
+    // the STFT cache: hashing the file and loading, or storing on a miss
+    public static final int CACHE = 2;
+    // detection functions
+    public static final int ODF = 3;
+    // peak picking
+    public static final int PEAKS = 4;
+    // tempo estimation
+    public static final int TEMPO = 5;
+    // evaluation against the ground truth
+    public static final int EVALUATION = 6;
+    // result files
+    public static final int OUTPUT = 7;
+    static final String[] STAGES = {"decode", "stft", "cache", "odf", "peaks", "tempo", "evaluation", "output"};
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+    private final long created = System.nanoTime();
+    private final AtomicLongArray nanos = new AtomicLongArray(STAGES.length);
+    private final AtomicLongArray calls = new AtomicLongArray(STAGES.length);
+    private final AtomicLongArray bytes = new AtomicLongArray(STAGES.length);
+    private final AtomicLong samples = new AtomicLong();
+    private final AtomicLong frames = new AtomicLong();
+    private volatile double seconds;
+
+    private static com.sun.management.ThreadMXBean threads() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean t = (com.sun.management.ThreadMXBean) bean;
+            if (t.isThreadAllocatedMemorySupported()) {
+                t.setThreadAllocatedMemoryEnabled(true);
+                return t;
+            }
+        }
+        return null;
+    }
+
+    // the bytes allocated by the current thread so far, -1 if not known
+    private static long allocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public Timer start(int stage) {
+        return new Timer(stage);
+    }
+
+    /**
+     * adds a measurement taken without a Timer
+     */
+    public void record(int stage, long stageNanos, long stageBytes) {
+        nanos.addAndGet(stage, stageNanos);
+        calls.incrementAndGet(stage);
+        if (stageBytes > 0) {
+            bytes.addAndGet(stage, stageBytes);
+        }
+    }
+
+    /**
+     * the decoded audio
+     * @param seconds the duration of the frames
+     */
+    public void setAudio(long samples, long frames, double seconds) {
+        this.samples.set(samples);
+        this.frames.set(frames);
+        this.seconds = seconds;
+    }
+
+    /**
+     * @return seconds of audio per second since the creation
+     */
+    public double getRealtimeFactor() {
+        return seconds / ((System.nanoTime() - created) * 1e-9);
+    }
+
+    /**
+     * writes PREFIX.metrics.json and PREFIX.metrics.csv
+     */
+    public void write(String track, String prefix) throws IOException {
+        final long wall = System.nanoTime() - created;
+        final double realtime = seconds / (wall * 1e-9);
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\"track\": \"").append(track.replace("\\", "\\\\").replace("\"", "\\\"")).append("\"");
+        json.append(", \"wall_ns\": ").append(wall);
+        json.append(", \"audio_seconds\": ").append(format(seconds));
+        json.append(", \"realtime\": ").append(format(realtime));
+        json.append(", \"samples\": ").append(samples.get());
+        json.append(", \"frames\": ").append(frames.get());
+        json.append(", \"stages\": {");
+        StringBuilder header = new StringBuilder("track,wall_ns,audio_seconds,realtime,samples,frames");
+        StringBuilder line = new StringBuilder();
+        line.append(csv(track)).append(',').append(wall).append(',').append(format(seconds)).append(',')
+                .append(format(realtime)).append(',').append(samples.get()).append(',').append(frames.get());
+        for (int s = 0; s < STAGES.length; s++) {
+            long b = THREADS == null ? -1 : bytes.get(s);
+            json.append(s == 0 ? "" : ", ").append('"').append(STAGES[s]).append("\": {\"ns\": ").append(nanos.get(s))
+                    .append(", \"calls\": ").append(calls.get(s)).append(", \"bytes\": ").append(b).append('}');
+            header.append(',').append(STAGES[s]).append("_ns,").append(STAGES[s]).append("_calls,")
+                    .append(STAGES[s]).append("_bytes");
+            line.append(',').append(nanos.get(s)).append(',').append(calls.get(s)).append(',').append(b);
+        }
+        json.append("}}");
+
+        FileWriter outputwriter = new FileWriter(prefix + ".metrics.json");
+        try {
+            outputwriter.append(json);
+            outputwriter.append('\n');
+        } finally {
+            outputwriter.close();
+        }
+        outputwriter = new FileWriter(prefix + ".metrics.csv");
+        try {
+            outputwriter.append(header);
+            outputwriter.append('\n');
+            outputwriter.append(line);
+            outputwriter.append('\n');
+        } finally {
+            outputwriter.close();
+        }
+    }
+
+    // a CSV field, quoted if it contains a separator, a quote or a line break
+    private static String csv(String field) {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0 && field.indexOf('\r') < 0) {
+            return field;
+        }
+        return '"' + field.replace("\"", "\"\"") + '"';
+    }
+
+    private static String format(double d) {
+        return String.format(Locale.ROOT, "%.3f", d);
+    }
+
+    /**
+     * one measurement of a stage
+     */
+    public final class Timer {
+
+        private final int stage;
+        private final long startNanos;
+        private final long startBytes;
+
+        private Timer(int stage) {
+            this.stage = stage;
+            this.startBytes = allocatedBytes();
+            this.startNanos = System.nanoTime();
+        }
+
+        public void stop() {
+            stop(0);
+        }
+
+        /**
+         * @param excludedNanos time of another stage in between, recorded
+         * separately
+         */
+        public void stop(long excludedNanos) {
+            long stageNanos = System.nanoTime() - startNanos - excludedNanos;
+            record(stage, stageNanos, startBytes < 0 ? -1 : allocatedBytes() - startBytes);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Odf.java
+ *
+ * The onset detection functions, see [1] in Processor: their numbers,
+ * the frames of history they need and their default peak picking
+ * parameters. The functions themselves are computed by OdfEngine.
+ */
+package at.cp.jku.teaching.amprocessing;
+
+import static java.lang.Math.*;
+
+/**
+ *
+ * @author mru
+ */
+public class Odf {
+
+    // the algorithm numbers used by Processor.setup() and the runners
+    public static final int PHASE_DEVIATION = 1;
+    public static final int SPECTRAL_FLUX = 2;
+    public static final int COMPLEX_DOMAIN = 3;
+    public static final int WEIGHTED_PHASE_DEVIATION = 4;
+    public static final int NORMALIZED_WEIGHTED_PHASE_DEVIATION = 5;
+    public static final int RECTIFIED_COMPLEX_DOMAIN = 6;
+    public static final int FRAME_DISTANCE = 7;
+    public static final int FRAME_DISTANCE_2 = 8;
+    public static final int HFC_1 = 9;
+    public static final int HFC_2 = 10;
+    public static final int COUNT = 10;
+    // the default peak picking parameters (m, w, alpha, delta) of each
+    // algorithm, index = algorithm number
+    static final int[] DEFAULT_M = {0, 50, 5, 3, 4, 5, 4, 3, 3, 5, 5};
+    static final int[] DEFAULT_W = {0, 20, 5, 4, 4, 2, 4, 5, 2, 4, 4};
+    static final double[] DEFAULT_ALPHA = {0, 1, 0.9, 0.3, 0.7, 0.9, 0.85, 0.5, 0.3, 0.4, 0.85};
+    static final double[] DEFAULT_DELTA = {0, 0.9, 0.9, 0.5, 0.9, 0.9, 0.9, 0.9, 0.9, 0.7, 0.9};
+
+    private Odf() {
+    }
+
+    /**
+     * the number of preceding frames an algorithm needs; the first
+     * history(algorithm) frames of the detection function stay 0
+     */
+    public static int history(int algorithm) {
+        switch (algorithm) {
+            case PHASE_DEVIATION:
+            case COMPLEX_DOMAIN:
+            case WEIGHTED_PHASE_DEVIATION:
+            case NORMALIZED_WEIGHTED_PHASE_DEVIATION:
+            case RECTIFIED_COMPLEX_DOMAIN:
+                return 2;
+            case SPECTRAL_FLUX:
+            case FRAME_DISTANCE:
+            case FRAME_DISTANCE_2:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    static double halfRect(final double d) {
+        return (d + abs(d)) / 2;
+    }
+
+    static double radialDistance(final double m1, final double phi1, final double m2, final double phi2) {
+        //  http://en.wikipedia.org/wiki/Radial_distance_(geometry)
+        return sqrt(m1 * m1 + m2 * m2 - 2 * m1 * m2 * cos(phi1 - phi2));
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * OdfEngine.java
+ *
+ * Computes any subset of the onset detection functions (see Odf and [1] in
+ * Processor) in a single pass over the frames.
+ *
+ * The detection functions share most of their per-bin work: the phase
+ * deviation based ones (1, 4, 5) all need the second phase difference, the
+ * complex domain ones (3, 6) the same predicted phase and radial distance.
+ * The engine computes these intermediates once per bin and feeds every
+ * requested function from them, so evaluating all algorithms costs about one
+ * traversal of the spectrogram instead of ten.
+ *
+ * For a whole spectrogram the first and second phase differences are taken
+ * from the planes Spectrogram keeps (computed once, on first request), so
+ * the phase based functions reduce to weighted sums over these planes. A
+ * stream has no such planes; there they are computed per bin.
+ *
+ * If the spectrogram keeps the real and imaginary parts, the complex domain
+ * and frame distance functions (3, 6, 7, 8) work on these directly: the
+ * distances are Euclidean, so no trigonometry is needed. The values equal
+ * the polar ones up to rounding.
+ *
+ * Every function accumulates exactly the same terms in the same order as
+ * its stand-alone definition, so the results do not depend on which other
+ * functions are computed alongside.
+ *
+ * The spectral flux, the phase deviations from the planes and the high
+ * frequency content are taken out of the loop if the vector kernels of
+ * OdfKernels can be loaded in this JVM; they sum the same terms, in another
+ * order.
+ */
+package at.cp.jku.teaching.amprocessing;
+
+import static java.lang.Math.*;
+
+/**
+ *
+ * @author mru
+ */
+public class OdfEngine {
+
+    private final boolean[] enabled = new boolean[Odf.COUNT + 1];
+    // the previous high frequency content, for alg 9 and 10
+    private double hfc1_n;
+    private double hfc2_n;
+    private boolean fastMath;
+    // the kernels of the machine, chosen once; null: the fused scalar loop
+    private static final OdfKernels KERNELS = OdfKernels.load();
+    private OdfKernels kernels = KERNELS;
+    private final double[] sums = new double[3];
+
+    /**
+     * @param algorithms the detection functions to compute, see the constants in Odf
+     */
+    public OdfEngine(int... algorithms) {
+        for (int a : algorithms) {
+            if (a < 1 || a > Odf.COUNT) {
+                throw new IllegalArgumentException("Unknown algorithm: " + a);
+            }
+            enabled[a] = true;
+        }
+        reset();
+    }
+
+    // the history of alg 9 and 10 before the first frame
+    private void reset() {
+        hfc1_n = 1.0;
+        hfc2_n = 0.0;
+    }
+
+    /**
+     * uses the approximations in FastMath for the radial distances and the
+     * phase normalization (see there for the error bounds)
+     */
+    public void setFastMath(boolean fastMath) {
+        this.fastMath = fastMath;
+    }
+
+    /**
+     * @param kernels the reductions to use (see OdfKernels), null for the
+     * fused scalar loop
+     */
+    void setKernels(OdfKernels kernels) {
+        this.kernels = kernels;
+    }
+
+    /**
+     * @return the kernels used by default in this JVM, null if there are none
+     */
+    static OdfKernels getDefaultKernels() {
+        return KERNELS;
+    }
+
+    /**
+     * computes the requested detection functions of a whole spectrogram;
+     * the result does not depend on earlier calls
+     * @return one array per algorithm, index = algorithm number; null for
+     * the algorithms that were not requested
+     */
+    public double[][] compute(Spectrogram s) {
+        reset();
+        final int frames = s.size();
+        final double[][] odf = new double[Odf.COUNT + 1][];
+        for (int a = 1; a <= Odf.COUNT; a++) {
+            if (enabled[a]) {
+                odf[a] = new double[frames];
+            }
+        }
+        final double[] values = new double[Odf.COUNT + 1];
+        final boolean phaseBased = enabled[Odf.PHASE_DEVIATION]
+                || enabled[Odf.WEIGHTED_PHASE_DEVIATION] || enabled[Odf.NORMALIZED_WEIGHTED_PHASE_DEVIATION]
+                || !s.isComplex() && (enabled[Odf.COMPLEX_DOMAIN] || enabled[Odf.RECTIFIED_COMPLEX_DOMAIN]);
+        final double[] dphi = phaseBased ? s.getPhaseDifferences() : null;
+        final double[] d2phi = phaseBased ? s.getSecondPhaseDifferences() : null;
+        for (int n = 0; n < frames; n++) {
+            final int n_0 = s.offset(n);
+            final int n_1 = n >= 1 ? s.offset(n - 1) : 0;
+            final int n_2 = n >= 2 ? s.offset(n - 2) : 0;
+            frame(s.magnitudes, s.phases, s.real, s.imag, dphi, d2phi, n, n_0, n_1, n_2, s.frameSize, values);
+            for (int a = 1; a <= Odf.COUNT; a++) {
+                if (enabled[a]) {
+                    odf[a][n] = values[a];
+                }
+            }
+        }
+        return odf;
+    }
+
+    /**
+     * computes the requested detection functions of frame n. frames must be
+     * passed in order, starting at n = 0, because alg 9 and 10 depend on the
+     * previous frame.
+     * @param n_0, n_1, n_2 the offsets of the frames n, n - 1 and n - 2 in
+     * mag and phi (n_1 and n_2 are ignored for n < 1 and n < 2)
+     * @param values receives the value of each requested algorithm, index =
+     * algorithm number; 0 while an algorithm lacks the history it needs
+     */
+    public void frame(final double[] mag, final double[] phi, final int n,
+            final int n_0, final int n_1, final int n_2, final int size, final double[] values) {
+        frame(mag, phi, null, null, null, null, n, n_0, n_1, n_2, size, values);
+    }
+
+    /**
+     * @param re, im the real and imaginary parts, laid out like mag; both
+     * null to use the polar form only
+     * @param dphi, d2phi the first and second phase differences, laid out
+     * like phi (see Spectrogram.getPhaseDifferences()); both null to compute
+     * them from phi
+     */
+    private void frame(final double[] mag, final double[] phi, final double[] re, final double[] im,
+            final double[] dphi, final double[] d2phi, final int n, final int n_0, final int n_1, final int n_2, final int size, final double[] values) {
+        final boolean phaseDeviation = n >= 2 && (enabled[Odf.PHASE_DEVIATION]
+                || enabled[Odf.WEIGHTED_PHASE_DEVIATION] || enabled[Odf.NORMALIZED_WEIGHTED_PHASE_DEVIATION]);
+        final boolean complexDomain = n >= 2 && (enabled[Odf.COMPLEX_DOMAIN] || enabled[Odf.RECTIFIED_COMPLEX_DOMAIN]);
+        final boolean polarComplexDomain = complexDomain && re == null;
+        // the reductions of the kernels are left out of the fused loop
+        final boolean kernelPhaseDeviation = phaseDeviation && kernels != null && d2phi != null;
+        final boolean loopPhaseDeviation = phaseDeviation && !kernelPhaseDeviation;
+        final boolean kernelFlux = n >= 1 && enabled[Odf.SPECTRAL_FLUX] && kernels != null;
+        final boolean spectralFlux = n >= 1 && enabled[Odf.SPECTRAL_FLUX] && !kernelFlux;
+        final boolean frameDistance = n >= 1 && enabled[Odf.FRAME_DISTANCE];
+        final boolean frameDistance2 = n >= 1 && enabled[Odf.FRAME_DISTANCE_2];
+
+        double dphi_acc = 0.0;          // alg 1
+        double flux_acc = 0.0;          // alg 2
+        double deviation_acc = 0.0;     // alg 3
+        double weighted_acc = 0.0;      // alg 4, 5
+        double mag_acc = 0.0;           // alg 5
+        double rectified_acc = 0.0;     // alg 6
+        double distance_acc = 0.0;      // alg 7
+        double distance2_acc = 0.0;     // alg 8
+
+        for (int k = 0; k < size; k++) {
+            final double mag_0 = mag[n_0 + k];
+            final double phi_0 = phi[n_0 + k];
+
+            if (loopPhaseDeviation || polarComplexDomain) {
+                final double phi_1 = phi[n_1 + k];
+                final double dphi_n_1;
+                if (dphi != null) {
+                    dphi_n_1 = dphi[n_1 + k];
+                } else {
+                    final double phi_2 = phi[n_2 + k];
+                    dphi_n_1 = normalizeAngle(phi_2, phi_1, fastMath) - phi_2;
+                }
+
+                if (loopPhaseDeviation) {
+                    final double d2phi_n;
+                    if (d2phi != null) {
+                        d2phi_n = d2phi[n_0 + k];
+                    } else {
+                        final double dphi_n_0 = normalizeAngle(phi_1, phi_0, fastMath) - phi_1;
+                        d2phi_n = normalizeAngle(dphi_n_1, dphi_n_0, fastMath) - dphi_n_1;
+                    }
+
+                    dphi_acc += abs(d2phi_n);
+                    weighted_acc += abs(mag_0 * d2phi_n);
+                    mag_acc += abs(mag_0);
+                }
+                if (polarComplexDomain) {
+                    // from dixon, implementation: confident
+                    final double mag_1 = mag[n_1 + k];
+                    final double distance = radialDistance(mag_0, phi_0, mag_1, normalizeAngle(phi_1 + dphi_n_1, 0.0, fastMath), fastMath);
+                    deviation_acc += distance;
+                    if (mag_0 >= mag_1) {
+                        rectified_acc += distance;
+                    }
+                }
+            }
+            if ((complexDomain || frameDistance) && re != null) {
+                // dphi_n_1 is a whole multiple of 2 pi (normalizeAngle only
+                // wraps phi_2 around phi_1), so the target of alg 3 and 6 has
+                // the phase of frame n - 1 and is X(n - 1) itself, as in alg 7
+                final double dr = re[n_0 + k] - re[n_1 + k];
+                final double di = im[n_0 + k] - im[n_1 + k];
+                final double distance = sqrt(dr * dr + di * di);
+                if (complexDomain) {
+                    deviation_acc += distance;
+                    if (mag_0 >= mag[n_1 + k]) {
+                        rectified_acc += distance;
+                    }
+                }
+                if (frameDistance) {
+                    distance_acc += distance;
+                }
+            }
+            if (spectralFlux) {
+                flux_acc += Odf.halfRect(abs(mag_0) - abs(mag[n_1 + k]));
+            }
+            if (frameDistance && re == null) {
+                distance_acc += abs(radialDistance(mag_0, phi_0, mag[n_1 + k], phi[n_1 + k], fastMath));
+            }
+            if (frameDistance2) {
+                if (re != null) {
+                    // both points have the phase phi_0
+                    distance2_acc += abs(mag_0 - mag[n_1 + k]);
+                } else {
+                    distance2_acc += abs(radialDistance(mag_0, phi_0, mag[n_1 + k], phi_0, fastMath));
+                }
+            }
+        }
+
+        if (kernelPhaseDeviation) {
+            kernels.phaseDeviation(mag, d2phi, n_0, size, sums);
+            dphi_acc = sums[0];
+            weighted_acc = sums[1];
+            mag_acc = sums[2];
+        }
+        if (kernelFlux) {
+            flux_acc = kernels.flux(mag, n_0, n_1, size);
+        }
+
+        values[Odf.PHASE_DEVIATION] = phaseDeviation ? dphi_acc / size : 0.0;
+        values[Odf.SPECTRAL_FLUX] = flux_acc;
+        values[Odf.COMPLEX_DOMAIN] = deviation_acc;
+        values[Odf.WEIGHTED_PHASE_DEVIATION] = phaseDeviation ? weighted_acc / size : 0.0;
+        values[Odf.NORMALIZED_WEIGHTED_PHASE_DEVIATION] = phaseDeviation ? weighted_acc / mag_acc : 0.0;
+        values[Odf.RECTIFIED_COMPLEX_DOMAIN] = rectified_acc;
+        values[Odf.FRAME_DISTANCE] = distance_acc;
+        values[Odf.FRAME_DISTANCE_2] = distance2_acc;
+
+        // alg 9 and 10 [5]: high frequency content over the upper half of the bins
+        if (enabled[Odf.HFC_1] || enabled[Odf.HFC_2]) {
+            double hfc1 = 0.0;
+            double energy = 0.0;
+            double hfc2 = 0.0;
+            if (kernels != null) {
+                kernels.hfc(mag, n_0, size / 2, size, sums);
+                hfc1 = sums[0];
+                energy = sums[1];
+                hfc2 = sums[2];
+            } else {
+                for (int k = size / 2; k < size; k++) {
+                    final double mag_0 = mag[n_0 + k];
+                    hfc1 += mag_0 * mag_0 * k;
+                    energy += mag_0 * mag_0;
+                    hfc2 += abs(mag_0) * k * k;
+                }
+            }
+
+            final double hfc1_n_1 = hfc1_n;
+            hfc1_n = hfc1;
+            values[Odf.HFC_1] = (hfc1 / hfc1_n_1) * (hfc1 / energy);
+
+            final double hfc2_n_1 = hfc2_n;
+            hfc2_n = hfc2;
+            values[Odf.HFC_2] = hfc2 - hfc2_n_1;
+        }
+    }
+
+    private static double normalizeAngle(final double a, final double center, final boolean fastMath) {
+        return fastMath ? FastMath.normalizeAngle(a, center) : SpectralData.normalizeAngle(a, center);
+    }
+
+    private static double radialDistance(final double m1, final double phi1, final double m2, final double phi2,
+            final boolean fastMath) {
+        return fastMath ? FastMath.radialDistance(m1, phi1, m2, phi2) : Odf.radialDistance(m1, phi1, m2, phi2);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * OdfKernels.java
+ *
+ * The per-bin reductions of OdfEngine that can run on the SIMD units: the
+ * spectral flux (alg 2), the phase deviations from the second phase
+ * difference plane (alg 1, 4, 5) and the high frequency content (alg 9, 10).
+ *
+ * The only implementation is VectorOdfKernels, written with the Vector API
+ * (jdk.incubator.vector) in the separate source set vector/, which is only
+ * compiled with a JDK 16 or newer. It is loaded by reflection when the
+ * first OdfEngine is created; without it (an older JDK, or a JVM started
+ * without --add-modules jdk.incubator.vector) or with
+ * -Damprocessing.kernels=scalar, OdfEngine keeps its fused scalar loop.
+ *
+ * The vector kernels sum in a different order, the detection functions
+ * differ from the scalar ones in the last bits.
+ */
+package at.cp.jku.teaching.amprocessing;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ *
+ * @author mru
+ */
+abstract class OdfKernels {
+
+    private static final String VECTOR = "at.cp.jku.teaching.amprocessing.VectorOdfKernels";
+
+    /**
+     * @return sum over k of halfRect(|mag[n_0 + k]| - |mag[n_1 + k]|), k < size
+     */
+    abstract double flux(double[] mag, int n_0, int n_1, int size);
+
+    /**
+     * sums over k < size with d = d2phi[n_0 + k], m = mag[n_0 + k]
+     * @param sums receives sum |d|, sum |m d| and sum |m|
+     */
+    abstract void phaseDeviation(double[] mag, double[] d2phi, int n_0, int size, double[] sums);
+
+    /**
+     * sums over from <= k < to with m = mag[n_0 + k]
+     * @param sums receives sum m^2 k, sum m^2 and sum |m| k^2
+     */
+    abstract void hfc(double[] mag, int n_0, int from, int to, double[] sums);
+
+    /**
+     * @return the kernels OdfEngine uses by default: the vector kernels
+     * unless -Damprocessing.kernels=scalar, null for the scalar loop
+     */
+    static OdfKernels load() {
+        if ("scalar".equals(System.getProperty("amprocessing.kernels"))) {
+            return null;
+        }
+        return vector();
+    }
+
+    /**
+     * @return the vector kernels, null if they cannot be used in this JVM
+     */
+    static OdfKernels vector() {
+        try {
+            return (OdfKernels) Class.forName(VECTOR).getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException ex) {
+            return null;
+        } catch (NoSuchMethodException ex) {
+            return null;
+        } catch (InstantiationException ex) {
+            return null;
+        } catch (IllegalAccessException ex) {
+            return null;
+        } catch (InvocationTargetException ex) {
+            return null;
+        } catch (LinkageError ex) {
+            // compiled for a newer JDK, or jdk.incubator.vector is not loaded
+            return null;
+        }
+    }
+}
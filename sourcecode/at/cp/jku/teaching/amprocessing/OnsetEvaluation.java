@@ -0,0 +1,172 @@
+/*
+ * OnsetEvaluation.java
+ *
+ * The evaluation of detected onsets against the ground truth, shared by
+ * Runner, EvalRunner and ParamStudyRunner.
+ *
+ * Every ground truth onset, in ascending order, is matched with the nearest
+ * detection that is not matched yet (the earlier one if two are equally
+ * near), if that is at most TOLERANCE seconds away. This is what the
+ * runners did with findNearest() and LinkedList.remove(), in
+ * O(ground truth * detections). Here both lists are copied into sorted
+ * arrays, the unmatched detections form a linked list over the indices, and
+ * a pointer to the first unmatched detection >= the current ground truth
+ * onset only moves forward. The nearest unmatched detection is that one or
+ * its predecessor, so the evaluation takes O(n log n) for sorting (O(n) on
+ * sorted input) and does not change its arguments.
+ */
+package at.cp.jku.teaching.amprocessing;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.StringTokenizer;
+
+/**
+ *
+ * @author mru
+ */
+public final class OnsetEvaluation {
+
+    // the largest distance of a match, in seconds
+    public static final double TOLERANCE = 0.05;
+    private final int tp;
+    private final int fp;
+    private final int fn;
+
+    public OnsetEvaluation(int tp, int fp, int fn) {
+        this.tp = tp;
+        this.fp = fp;
+        this.fn = fn;
+    }
+
+    /**
+     * @param groundtruth the ground truth onsets in seconds
+     * @param onsets the detected onsets in seconds
+     */
+    public static OnsetEvaluation evaluate(List<Double> groundtruth, List<Double> onsets) {
+        return evaluate(toArray(groundtruth), toArray(onsets));
+    }
+
+    /**
+     * @param groundtruth the ground truth onsets in seconds, not changed
+     * @param onsets the detected onsets in seconds, not changed
+     */
+    public static OnsetEvaluation evaluate(double[] groundtruth, double[] onsets) {
+        final double[] g = groundtruth.clone();
+        final double[] d = onsets.clone();
+        Arrays.sort(g);
+        Arrays.sort(d);
+
+        // detection i is node i + 1; node 0 and n + 1 are the ends
+        final int n = d.length;
+        final int[] prev = new int[n + 2];
+        final int[] next = new int[n + 2];
+        for (int i = 0; i <= n + 1; i++) {
+            prev[i] = i - 1;
+            next[i] = i + 1;
+        }
+
+        int tp = 0;
+        // the first unmatched detection >= the current onset, or n + 1
+        int succ = next[0];
+        for (double onset : g) {
+            while (succ <= n && d[succ - 1] < onset) {
+                succ = next[succ];
+            }
+            final int pred = prev[succ];
+
+            int nearest = -1;
+            double distance = Double.MAX_VALUE;
+            if (pred >= 1) {
+                nearest = pred;
+                distance = onset - d[pred - 1];
+            }
+            if (succ <= n && d[succ - 1] - onset < distance) {
+                nearest = succ;
+                distance = d[succ - 1] - onset;
+            }
+
+            if (nearest >= 0 && distance <= TOLERANCE) {
+                if (nearest == succ) {
+                    succ = next[succ];
+                }
+                next[prev[nearest]] = next[nearest];
+                prev[next[nearest]] = prev[nearest];
+                tp++;
+            }
+        }
+        return new OnsetEvaluation(tp, n - tp, g.length - tp);
+    }
+
+    /**
+     * reads an onset file: one onset per line, in seconds, in the first
+     * column
+     */
+    public static List<Double> readOnsets(String filename) throws IOException {
+        List<Double> onsets = new LinkedList<Double>();
+        BufferedReader reader = new BufferedReader(new FileReader(filename));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                StringTokenizer st = new StringTokenizer(line);
+                onsets.add(Double.parseDouble(st.nextToken()));
+            }
+        } finally {
+            reader.close();
+        }
+        return onsets;
+    }
+
+    private static double[] toArray(List<Double> list) {
+        final double[] a = new double[list.size()];
+        int i = 0;
+        for (double d : list) {
+            a[i++] = d;
+        }
+        return a;
+    }
+
+    public int getTP() {
+        return tp;
+    }
+
+    public int getFP() {
+        return fp;
+    }
+
+    public int getFN() {
+        return fn;
+    }
+
+    /**
+     * @return TP / (TP + FP), NaN without detections
+     */
+    public double getPrecision() {
+        return (double) tp / (tp + fp);
+    }
+
+    /**
+     * @return TP / (TP + FN), NaN without ground truth
+     */
+    public double getRecall() {
+        return (double) tp / (tp + fn);
+    }
+
+    /**
+     * @return the harmonic mean of precision and recall, NaN if both are 0
+     */
+    public double getFMeasure() {
+        double precision = getPrecision();
+        double recall = getRecall();
+        return (2 * precision * recall) / (precision + recall);
+    }
+
+    @Override
+    public String toString() {
+        return "TP " + tp + " FP " + fp + " FN " + fn;
+    }
+}
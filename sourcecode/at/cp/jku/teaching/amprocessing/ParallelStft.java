@@ -0,0 +1,148 @@
+/*
+ * ParallelStft.java
+ *
+ * Computes the STFT of a fully decoded signal on a ForkJoinPool.
+ *
+ * Frame j covers the samples [(j + 1) * hopSize - fftSize, (j + 1) * hopSize),
+ * samples before the start of the signal are 0. This is exactly the frame
+ * AudioFile computes from its circular buffer after the (j + 1)-th hop, so
+ * the frames can be computed in any order. The frames are split into chunks,
+ * each chunk reads its (overlapping) part of the signal, uses its own scratch
+ * buffers and writes its frames to their place in the Spectrogram.
+ *
+ * Phase unwrapping is a recurrence over the frames, but every bin only
+ * depends on its own history. It runs as a second pass, parallel over bins.
+ *
+ * For a complex spectrogram the real and imaginary parts are stored as well.
+ *
+ * The result is bit-identical to the sequential STFT in AudioFile.
+ */
+package at.cp.jku.teaching.amprocessing;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ *
+ * @author mru
+ */
+public class ParallelStft {
+
+    // frames per chunk below which a chunk is not split any further
+    private static final int CHUNK_FRAMES = 64;
+    // bins per task of the unwrapping pass
+    private static final int CHUNK_BINS = 32;
+    private static ForkJoinPool pool;
+
+    private ParallelStft() {
+    }
+
+    private static synchronized ForkJoinPool pool() {
+        if (pool == null) {
+            pool = new ForkJoinPool();
+        }
+        return pool;
+    }
+
+    /**
+     * @param samples the mono signal
+     * @param length the number of valid samples in samples
+     * @param window the analysis window, fftSize values
+     * @param fftPlan a plan of size fftSize
+     * @param fastMath computes the phases with FastMath.atan2()
+     * @param complex keeps the real and imaginary parts, see Spectrogram
+     * @return the spectrogram with length / hopSize frames
+     */
+    public static Spectrogram compute(double[] samples, int length, int fftSize, int hopSize,
+            double[] window, RealFftPlan fftPlan, boolean fastMath, boolean complex) {
+        int frames = length / hopSize;
+        Spectrogram s = new Spectrogram(fftSize, frames, complex);
+        s.setSize(frames);
+        s.trim();
+
+        ForkJoinPool p = pool();
+        p.invoke(new FrameTask(s, samples, fftSize, hopSize, window, fftPlan, fastMath, 0, frames));
+        p.invoke(new UnwrapTask(s, 0, s.frameSize));
+        return s;
+    }
+
+    private static class FrameTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final Spectrogram s;
+        private final double[] samples;
+        private final int fftSize;
+        private final int hopSize;
+        private final double[] window;
+        private final RealFftPlan fftPlan;
+        private final boolean fastMath;
+        private final int from;
+        private final int to;
+
+        FrameTask(Spectrogram s, double[] samples, int fftSize, int hopSize, double[] window,
+                RealFftPlan fftPlan, boolean fastMath, int from, int to) {
+            this.s = s;
+            this.samples = samples;
+            this.fftSize = fftSize;
+            this.hopSize = hopSize;
+            this.window = window;
+            this.fftPlan = fftPlan;
+            this.fastMath = fastMath;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK_FRAMES) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new FrameTask(s, samples, fftSize, hopSize, window, fftPlan, fastMath, from, mid),
+                        new FrameTask(s, samples, fftSize, hopSize, window, fftPlan, fastMath, mid, to));
+                return;
+            }
+            final double[] frameBuffer = new double[fftSize];
+            final double[] reBuffer = new double[fftSize / 2 + 1];
+            final double[] imBuffer = new double[fftSize / 2 + 1];
+            final double[] realBuffer = s.isComplex() ? new double[fftSize / 2 + 1] : null;
+            final double[] imagBuffer = s.isComplex() ? new double[fftSize / 2 + 1] : null;
+            for (int j = from; j < to; j++) {
+                int start = (j + 1) * hopSize - fftSize;
+                for (int i = 0; i < fftSize; i++) {
+                    int index = start + i;
+                    frameBuffer[i] = window[i] * (index < 0 ? 0.0 : samples[index]);
+                }
+                if (realBuffer != null) {
+                    fftPlan.fft(frameBuffer, realBuffer, imagBuffer);
+                    fftPlan.polar(realBuffer, imagBuffer, reBuffer, imBuffer, fastMath);
+                } else {
+                    fftPlan.magnitudePhaseFFT(frameBuffer, reBuffer, imBuffer, fastMath);
+                }
+                s.set(j, reBuffer, imBuffer, realBuffer, imagBuffer);
+            }
+        }
+    }
+
+    private static class UnwrapTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final Spectrogram s;
+        private final int from;
+        private final int to;
+
+        UnwrapTask(Spectrogram s, int from, int to) {
+            this.s = s;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK_BINS) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new UnwrapTask(s, from, mid), new UnwrapTask(s, mid, to));
+                return;
+            }
+            s.unwrapPhases(from, to);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * ParamSearchRunner.java
+ *
+ * Searches the best peak picking parameters of one algorithm over a set of
+ * tracks with the strategies of ParameterSearch, instead of the full grid of
+ * ParamStudyRunner per track.
+ */
+package at.cp.jku.teaching.amprocessing;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+
+/**
+ *
+ * prints one line per strategy:
+ * strategy m w alpha delta FMEASURE evaluations
+ *
+ * @author mru
+ */
+public class ParamSearchRunner {
+
+    private ParamSearchRunner() {
+    }
+
+    /*
+     * Options:
+     * -i DIR or GLOB (the wav files; NAME.onsets next to NAME.wav is the ground truth)
+     * -a ALGORITHM (default 9)
+     * -s STRATEGIES (comma separated: grid, coarse, halving, random, lhs; default coarse)
+     * -n SAMPLES (for halving, random and lhs; default 81)
+     * -r SPACE (grid, wide or mMin:mMax,wMin:wMax,alphaMin:alphaMax,deltaMin:deltaMax; default grid)
+     * -e SEED (default 0)
+     * -c CACHEDIR (directory for cached STFTs, optional!)
+     * -j THREADS (default: number of processors)
+     */
+    public static void main(String[] args) {
+        OptionParser parser = new OptionParser("qi:a:s:n:r:e:c:j:");
+        OptionSet options = parser.parse(args);
+
+        if (options.has("q")) {
+            Log.doLog = false;
+        }
+
+        if (!options.has("i")) {
+            Log.log("Input directory or pattern required! (-i INPUT)");
+            System.exit(1);
+        }
+
+        final int algorithm = options.has("a") ? Integer.parseInt(options.valueOf("a").toString()) : 9;
+        String[] strategies = options.has("s") ? options.valueOf("s").toString().split(",") : new String[]{"coarse"};
+        int samples = options.has("n") ? Integer.parseInt(options.valueOf("n").toString()) : 81;
+        if (samples < 1) {
+            Log.log("At least one sample required! (-n SAMPLES)");
+            System.exit(1);
+        }
+        long seed = options.has("e") ? Long.parseLong(options.valueOf("e").toString()) : 0;
+        int threads = options.has("j") ? Integer.parseInt(options.valueOf("j").toString())
+                : Runtime.getRuntime().availableProcessors();
+
+        SearchSpace space = SearchSpace.GRID;
+        if (options.has("r")) {
+            String r = options.valueOf("r").toString();
+            space = r.equals("grid") ? SearchSpace.GRID : r.equals("wide") ? SearchSpace.WIDE : SearchSpace.parse(r);
+        }
+
+        final SpectrogramCache cache = options.has("c") ? new SpectrogramCache(new File(options.valueOf("c").toString())) : null;
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            // the detection function of every track with ground truth, in parallel
+            List<Callable<ParameterSweep>> loads = new ArrayList<Callable<ParameterSweep>>();
+            List<List<Double>> groundtruth = new ArrayList<List<Double>>();
+            for (final File wav : BatchRunner.wavFiles(options.valueOf("i").toString())) {
+                String name = wav.getName().substring(0, wav.getName().lastIndexOf("."));
+                File onsets = new File(wav.getParentFile(), name + ".onsets");
+                if (!onsets.exists()) {
+                    Log.log("No ground truth, skipped: " + wav);
+                    continue;
+                }
+                groundtruth.add(OnsetEvaluation.readOnsets(onsets.getPath()));
+                loads.add(new Callable<ParameterSweep>() {
+
+                    @Override
+                    public ParameterSweep call() {
+                        return new Processor(wav.getPath(), cache).sweep(algorithm);
+                    }
+                });
+            }
+            if (loads.isEmpty()) {
+                Log.log("No tracks with ground truth!");
+                System.exit(1);
+            }
+            List<ParameterSweep> sweeps = BatchRunner.invokeAll(pool, loads);
+            Log.log(sweeps.size() + " tracks, space " + space);
+
+            System.out.println("strategy m w alpha delta FMEASURE evaluations");
+            for (String strategy : strategies) {
+                ParameterSearch search;
+                if (strategy.equals("grid")) {
+                    search = new GridSearch(space, sweeps, groundtruth, pool, seed);
+                } else if (strategy.equals("coarse")) {
+                    search = new CoarseToFineSearch(space, sweeps, groundtruth, pool, seed);
+                } else if (strategy.equals("halving")) {
+                    search = new SuccessiveHalvingSearch(space, sweeps, groundtruth, pool, seed, samples);
+                } else if (strategy.equals("random")) {
+                    search = new RandomSearch(space, sweeps, groundtruth, pool, seed, samples, false);
+                } else if (strategy.equals("lhs")) {
+                    search = new RandomSearch(space, sweeps, groundtruth, pool, seed, samples, true);
+                } else {
+                    throw new IllegalArgumentException("Unknown strategy: " + strategy);
+                }
+
+                ParameterSearch.Result result = search.search();
+                AnalysisConfig c = result.getConfig();
+                System.out.println(strategy + " " + c.getM() + " " + c.getW() + " " + c.getAlpha() + " " + c.getDelta()
+                        + " " + result.getFMeasure() + " " + result.getEvaluations());
+            }
+
+        } catch (IOException ex) {
+            Logger.getLogger(ParamSearchRunner.class.getName()).log(Level.SEVERE, null, ex);
+            System.exit(1);
+        } catch (InterruptedException ex) {
+            Logger.getLogger(ParamSearchRunner.class.getName()).log(Level.SEVERE, null, ex);
+            System.exit(1);
+        } catch (ExecutionException ex) {
+            Logger.getLogger(ParamSearchRunner.class.getName()).log(Level.SEVERE, null, ex);
+            System.exit(1);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -11,12 +11,14 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
-import java.util.Iterator;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import joptsimple.OptionParser;
@@ -29,6 +31,15 @@ import joptsimple.OptionSet;
  *
  * produces the output files "train??.onsets.paramstudy.<ALG>.eval"
  *
+ * the parameter sets of an algorithm are evaluated in parallel, all share
+ * one ParameterSweep. The results go to a ResultStore first, so an
+ * interrupted study continues where it stopped when it is run again; the
+ * .eval files are exported from the store, in the order of the grid. -x
+ * exports them again without running anything.
+ *
+ * the stage times go to "train??.onsets.paramstudy.metrics.{json,csv}"
+ * (see Metrics).
+ *
  * @author mru
  */
 public class ParamStudyRunner {
@@ -39,6 +50,9 @@ public class ParamStudyRunner {
      * -o DIR (the directory in which the 2 resultfiles (WAVFILENAME.onsets and WAVEFILENAME.tempo) are written to
      * -g ONSETGROUNDTRUTHFILE (the file including the onset groundtruth, optional!)
      * -t TEMPOGROUNDTRUTHFILE (the file including the tempo groundtruth, optional!)
+     * -c CACHEDIR (directory for cached STFTs, optional!)
+     * -j THREADS (default: number of processors)
+     * -x (only export the .eval files of the result store in DIR, optional!)
      *
      */
     public static void main(String[] args) {
@@ -53,7 +67,7 @@ public class ParamStudyRunner {
         boolean hasOnsetGroundTruth = false;
         boolean hasTempoGroundTruth = false;
 
-        OptionParser parser = new OptionParser("qi:o:g:t:p:");
+        OptionParser parser = new OptionParser("qxi:o:g:t:p:c:j:");
         OptionSet options = parser.parse(args);
 
         if (options.has("q")) {
@@ -99,149 +113,142 @@ public class ParamStudyRunner {
             hasTempoGroundTruth = true;
         }
 
-        Processor p = new Processor(wavFileName);
-
-        for (int alg = 9; alg <= 10; alg++) {
-
-
+        if (options.has("x")) {
+            try {
+                String store = storeFileName(outputDirectory, shortWavFileName);
+                if (!new File(store).exists()) {
+                    Log.log("No results: " + store);
+                    System.exit(1);
+                }
+                ResultStore.exportEval(ResultStore.read(new File(store)), outputDirectory + shortWavFileName);
+            } catch (IOException ex) {
+                Logger.getLogger(ParamStudyRunner.class.getName()).log(Level.SEVERE, null, ex);
+                System.exit(1);
+            }
+            return;
+        }
 
-            String onsetEvalOut = outputDirectory + shortWavFileName + ".onsets.paramstudy." + nd.format(alg) + ".eval";
-            String gnuplotcomment = "";
+        SpectrogramCache cache = null;
+        if (options.has("c")) {
+            cache = new SpectrogramCache(new File(options.valueOf("c").toString()));
+        }
 
-            System.out.println("detection for " + shortWavFileName + " alg: " + alg);
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (options.has("j")) {
+            threads = Integer.parseInt(options.valueOf("j").toString());
+        }
 
-            try {
-                FileWriter outputwriter = new FileWriter(onsetEvalOut);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<Double> groundtruthOnsets = OnsetEvaluation.readOnsets(onsetGroundTruthFileName);
 
-                outputwriter.append(gnuplotcomment + "m w alpha delta TP FP FN PRECISION RECALL FMEASURE");
-                outputwriter.append('\n');
+            Processor p = new Processor(wavFileName, cache);
+            // all detection functions in one pass over the spectrogram
+            p.precompute(ALGORITHMS);
 
-                for (int m = 2; m < 6; m += 1) {
-                    for (int w = 2; w < 6; w += 1) {
-                        for (double delta = -0.1; delta < 1; delta += 0.1) {
-                            for (double alpha = 0; alpha < 1; alpha += 0.1) {
+            run(p, shortWavFileName, outputDirectory, groundtruthOnsets, pool);
+            p.getMetrics().write(shortWavFileName, outputDirectory + shortWavFileName + ".onsets.paramstudy");
 
-                                p.setup(alg, m, w, alpha, delta);
+        } catch (IOException ex) {
+            Logger.getLogger(ParamStudyRunner.class.getName()).log(Level.SEVERE, null, ex);
+            System.exit(1);
+        } catch (InterruptedException ex) {
+            Logger.getLogger(ParamStudyRunner.class.getName()).log(Level.SEVERE, null, ex);
+            System.exit(1);
+        } catch (ExecutionException ex) {
+            Logger.getLogger(ParamStudyRunner.class.getName()).log(Level.SEVERE, null, ex);
+            System.exit(1);
+        } finally {
+            pool.shutdown();
+        }
+    }
+    // the algorithms of run()
+    static final int[] ALGORITHMS = {9, 10};
 
-                                p.analyze();
+    /**
+     * the parameter study of every algorithm, writes
+     * DIR/NAME.onsets.paramstudy.ALG.eval
+     *
+     * the results are kept in DIR/NAME.onsets.paramstudy.results (see
+     * ResultStore), a checkpoint after every row (m, w) of the grid; the
+     * parameter sets already in there are not evaluated again, unless the
+     * wav file or the ground truth have changed since.
+     * @param pool evaluates the parameter sets in parallel, null: one after
+     * the other
+     */
+    static void run(Processor p, String shortWavFileName, String outputDirectory,
+            List<Double> groundtruthOnsets, ExecutorService pool)
+            throws IOException, InterruptedException, ExecutionException {
+        ResultStore store = new ResultStore(new File(storeFileName(outputDirectory, shortWavFileName)),
+                ResultStore.fingerprint(p.getFilename(), groundtruthOnsets, p.isFastMath()));
+        try {
+            for (int alg : ALGORITHMS) {
 
-                                String paramString = m + " " + w + " " + fd.format(alpha) + " " + fd.format(delta);
+                // the detection function is computed and normalized once,
+                // only the peak picking is repeated for every parameter set
+                ParameterSweep sweep = p.sweep(alg);
 
-                                String evalResult = evaluateOnsets(p.getOnsets(), onsetGroundTruthFileName);
+                System.out.println("detection for " + shortWavFileName + " alg: " + alg);
 
-                                outputwriter.append(paramString + " " + evalResult);
-                                outputwriter.append('\n');
-                                outputwriter.flush();
-                                System.out.print(".");
-                            }
+                for (int m = SearchSpace.GRID.mMin; m <= SearchSpace.GRID.mMax; m += 1) {
+                    for (int w = SearchSpace.GRID.wMin; w <= SearchSpace.GRID.wMax; w += 1) {
+                        List<ResultStore.Record> records = BatchRunner.invokeAll(pool, row(sweep, groundtruthOnsets, m, w, store));
+                        Metrics.Timer timer = p.getMetrics().start(Metrics.OUTPUT);
+                        for (ResultStore.Record r : records) {
+                            store.append(r);
                         }
+                        store.flush();
+                        timer.stop();
                     }
                 }
-                outputwriter.close();
-
-            } catch (IOException ex) {
-                Logger.getLogger(ParamStudyRunner.class.getName()).log(Level.SEVERE, null, ex);
-                System.exit(1);
-            } finally {
             }
+        } finally {
+            store.close();
         }
+        Metrics.Timer timer = p.getMetrics().start(Metrics.OUTPUT);
+        ResultStore.exportEval(store.records(), outputDirectory + shortWavFileName);
+        timer.stop();
     }
-    private static NumberFormat fd = new DecimalFormat("#.###");
-    private static NumberFormat nd = new DecimalFormat("00");
-    private static LinkedList<Double> groundtruthOnsets_cache = null;
-    // Evaluate the Onset Estimations
-
-    private static String evaluateOnsets(LinkedList<Double> onsets, String onsetGroundTruthFileName) {
-
-        int TP = 0;
-        int FP = 0;
-        int FN = 0;
-        double precision = 0;
-        double recall = 0;
-        double fmeasure = 0;
-
 
-
-        if (groundtruthOnsets_cache == null) {
-            groundtruthOnsets_cache = new LinkedList<Double>();
-            try {
-                BufferedReader reader = new BufferedReader(new FileReader(onsetGroundTruthFileName));
-                String line;
-
-                while ((line = reader.readLine()) != null) {
-                    StringTokenizer st = new StringTokenizer(line);
-                    groundtruthOnsets_cache.add(Double.parseDouble(st.nextToken()));
+    /**
+     * the evaluations of one row (m, w) of the grid, all alpha and delta
+     * that are not in the store yet
+     */
+    static List<Callable<ResultStore.Record>> row(ParameterSweep sweep, List<Double> groundtruthOnsets,
+            int m, int w, ResultStore store) {
+        List<Callable<ResultStore.Record>> tasks = new ArrayList<Callable<ResultStore.Record>>();
+        for (double delta = -0.1; delta < 1; delta += 0.1) {
+            for (double alpha = 0; alpha < 1; alpha += 0.1) {
+                if (!store.contains(sweep.getAlgorithm(), m, w, alpha, delta)) {
+                    tasks.add(gridPoint(sweep, groundtruthOnsets, m, w, alpha, delta));
                 }
-            } catch (IOException ex) {
-                Logger.getLogger(ParamStudyRunner.class.getName()).log(Level.SEVERE, null, ex);
-                System.exit(1);
             }
         }
-        List<Double> groundtruthOnsets = new LinkedList<Double>();
-        groundtruthOnsets.addAll(groundtruthOnsets_cache);
-
-//        Log.log(onsets.size());
-//        Log.log(groundtruthOnsets.size());
-
-        Iterator<Double> it = groundtruthOnsets.iterator();
-        while (it.hasNext()) {
-            double d = it.next();
-            double tmp = findNearest(d, onsets);
-            if (Math.abs(d - tmp) <= 0.05) {
-                onsets.remove(tmp);
-                it.remove();
-                TP++;
-            }
-
-        }
-        FN = groundtruthOnsets.size();
-        FP = onsets.size();
-
-//        Log.log(onsets.size());
-//        Log.log(groundtruthOnsets.size());
-
-        precision = (double) TP / (TP + FP);
-        recall = (double) TP / (TP + FN);
-        if (precision == Double.NaN) {
-            precision = 0;
-        }
-        if (recall == Double.NaN) {
-            recall = 0;
-        }
-        fmeasure = (2 * precision * recall) / (precision + recall);
-        if (fmeasure == Double.NaN) {
-            fmeasure = 0;
-        }
-
-        StringBuilder sb = new StringBuilder();
-        sb.append(TP);
-        sb.append(" ");
-        sb.append(FP);
-        sb.append(" ");
-        sb.append(FN);
-        sb.append(" ");
-        sb.append(fd.format(precision));
-        sb.append(" ");
-        sb.append(fd.format(recall));
-        sb.append(" ");
-        sb.append(fd.format(fmeasure));
-
-        return sb.toString();
-
+        return tasks;
     }
 
-    private static double findNearest(double val, List<Double> list) {
-        double minDist = Double.MAX_VALUE;
-        double retval = 0;
+    static String storeFileName(String outputDirectory, String shortWavFileName) {
+        return outputDirectory + shortWavFileName + ".onsets.paramstudy.results";
+    }
 
-        for (Double d : list) {
-            if (Math.abs(val - d) < minDist) {
-                minDist = Math.abs(val - d);
-                retval = d;
+    /**
+     * the evaluation of one parameter set
+     */
+    private static Callable<ResultStore.Record> gridPoint(final ParameterSweep sweep,
+            final List<Double> groundtruthOnsets, final int m, final int w, final double alpha, final double delta) {
+        return new Callable<ResultStore.Record>() {
+
+            @Override
+            public ResultStore.Record call() {
+                LinkedList<Double> onsets = sweep.onsets(m, w, alpha, delta);
+                Metrics.Timer timer = sweep.getMetrics().start(Metrics.EVALUATION);
+                OnsetEvaluation e = OnsetEvaluation.evaluate(groundtruthOnsets, onsets);
+                timer.stop();
+
+                System.out.print(".");
+                return new ResultStore.Record(sweep.getAlgorithm(), m, w, alpha, delta, e);
             }
-        }
-        return retval;
-
+        };
     }
 
     // Evaluate the Tempo Estimation
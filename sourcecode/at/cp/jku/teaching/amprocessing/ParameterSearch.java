@@ -0,0 +1,243 @@
+/*
+ * ParameterSearch.java
+ *
+ * The base of the search strategies for the peak picking parameters of one
+ * algorithm over a set of tracks (see ParamSearchRunner).
+ *
+ * The score of a parameter set is its mean F-measure over the tracks (0 for
+ * an undefined F-measure). One evaluation is one parameter set on one track:
+ * a run of the peak picking on the track's ParameterSweep and an
+ * OnsetEvaluation; the full grid of ParamStudyRunner costs 2112 per track.
+ * Every candidate remembers the tracks it was evaluated on, so no pair is
+ * evaluated twice; the candidates of a step are evaluated in parallel.
+ *
+ * The tracks are visited in an order shuffled with the seed, so strategies
+ * that look at the first tracks only (SuccessiveHalvingSearch) see a random
+ * subset.
+ */
+package at.cp.jku.teaching.amprocessing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ * @author mru
+ */
+public abstract class ParameterSearch {
+
+    private final List<ParameterSweep> sweeps;
+    private final List<List<Double>> groundtruth;
+    private final int[] order;
+    private final ExecutorService pool;
+    private final AtomicInteger evaluations = new AtomicInteger();
+    protected final SearchSpace space;
+    protected final Random random;
+    // the algorithm and tempo settings of every candidate
+    protected final AnalysisConfig base;
+
+    /**
+     * @param sweeps one sweep of the algorithm per track
+     * @param groundtruth the ground truth onsets of every track
+     * @param pool evaluates in parallel, may be null
+     */
+    protected ParameterSearch(SearchSpace space, List<ParameterSweep> sweeps, List<List<Double>> groundtruth,
+            ExecutorService pool, long seed) {
+        if (sweeps.isEmpty() || sweeps.size() != groundtruth.size()) {
+            throw new IllegalArgumentException("One ground truth per track required");
+        }
+        this.space = space;
+        this.sweeps = sweeps;
+        this.groundtruth = groundtruth;
+        this.pool = pool;
+        this.random = new Random(seed);
+        this.base = new AnalysisConfig(sweeps.get(0).getAlgorithm());
+
+        List<Integer> shuffled = new ArrayList<Integer>();
+        for (int t = 0; t < sweeps.size(); t++) {
+            shuffled.add(t);
+        }
+        Collections.shuffle(shuffled, random);
+        order = new int[shuffled.size()];
+        for (int t = 0; t < order.length; t++) {
+            order[t] = shuffled.get(t);
+        }
+    }
+
+    public abstract Result search() throws InterruptedException, ExecutionException;
+
+    public int getEvaluations() {
+        return evaluations.get();
+    }
+
+    protected int tracks() {
+        return sweeps.size();
+    }
+
+    protected Candidate candidate(AnalysisConfig config) {
+        return new Candidate(config, tracks());
+    }
+
+    /**
+     * evaluates every candidate on the first tracks (of the shuffled
+     * order) it was not evaluated on yet
+     */
+    protected void evaluate(List<Candidate> candidates, int tracks) throws InterruptedException, ExecutionException {
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (final Candidate c : candidates) {
+            for (int i = 0; i < tracks; i++) {
+                if (!c.evaluated[i]) {
+                    c.evaluated[i] = true;
+                    final int index = i;
+                    tasks.add(new Callable<Void>() {
+
+                        @Override
+                        public Void call() {
+                            c.scores[index] = score(c.config, order[index]);
+                            return null;
+                        }
+                    });
+                }
+            }
+        }
+        BatchRunner.invokeAll(pool, tasks);
+    }
+
+    private double score(AnalysisConfig c, int track) {
+        evaluations.incrementAndGet();
+        List<Double> onsets = sweeps.get(track).onsets(c.getM(), c.getW(), c.getAlpha(), c.getDelta());
+        double f = OnsetEvaluation.evaluate(groundtruth.get(track), onsets).getFMeasure();
+        return Double.isNaN(f) ? 0.0 : f;
+    }
+
+    /**
+     * sorts the candidates by their mean score on the first tracks, the best
+     * first; the sort is stable, so ties keep their order
+     */
+    protected static void sort(List<Candidate> candidates, final int tracks) {
+        Collections.sort(candidates, new Comparator<Candidate>() {
+
+            @Override
+            public int compare(Candidate a, Candidate b) {
+                return Double.compare(b.mean(tracks), a.mean(tracks));
+            }
+        });
+    }
+
+    /**
+     * @return n Latin hypercube samples: every range is split into n strata,
+     * each sample takes a different one per parameter
+     */
+    protected List<Candidate> latinHypercube(int n) {
+        int[][] strata = new int[4][];
+        for (int d = 0; d < 4; d++) {
+            List<Integer> perm = new ArrayList<Integer>();
+            for (int i = 0; i < n; i++) {
+                perm.add(i);
+            }
+            Collections.shuffle(perm, random);
+            strata[d] = new int[n];
+            for (int i = 0; i < n; i++) {
+                strata[d][i] = perm.get(i);
+            }
+        }
+        List<Candidate> candidates = new ArrayList<Candidate>();
+        for (int i = 0; i < n; i++) {
+            double[] u = new double[4];
+            for (int d = 0; d < 4; d++) {
+                u[d] = (strata[d][i] + random.nextDouble()) / n;
+            }
+            candidates.add(candidate(space.at(base, u)));
+        }
+        return candidates;
+    }
+
+    /**
+     * @return n uniform random samples
+     */
+    protected List<Candidate> uniform(int n) {
+        List<Candidate> candidates = new ArrayList<Candidate>();
+        for (int i = 0; i < n; i++) {
+            double[] u = {random.nextDouble(), random.nextDouble(), random.nextDouble(), random.nextDouble()};
+            candidates.add(candidate(space.at(base, u)));
+        }
+        return candidates;
+    }
+
+    /**
+     * the best of the candidates, which must be evaluated on all tracks
+     */
+    protected Result result(List<Candidate> candidates) {
+        sort(candidates, tracks());
+        Candidate best = candidates.get(0);
+        return new Result(best.config, best.mean(tracks()), getEvaluations());
+    }
+
+    /**
+     * a parameter set and its scores on the tracks (in the shuffled order)
+     */
+    protected static final class Candidate {
+
+        final AnalysisConfig config;
+        final double[] scores;
+        final boolean[] evaluated;
+
+        Candidate(AnalysisConfig config, int tracks) {
+            this.config = config;
+            this.scores = new double[tracks];
+            this.evaluated = new boolean[tracks];
+        }
+
+        double mean(int tracks) {
+            double sum = 0.0;
+            for (int i = 0; i < tracks; i++) {
+                sum += scores[i];
+            }
+            return sum / tracks;
+        }
+    }
+
+    /**
+     * the outcome of a search
+     */
+    public static final class Result {
+
+        private final AnalysisConfig config;
+        private final double fmeasure;
+        private final int evaluations;
+
+        Result(AnalysisConfig config, double fmeasure, int evaluations) {
+            this.config = config;
+            this.fmeasure = fmeasure;
+            this.evaluations = evaluations;
+        }
+
+        /**
+         * @return the best parameters
+         */
+        public AnalysisConfig getConfig() {
+            return config;
+        }
+
+        /**
+         * @return the mean F-measure of the best parameters over all tracks
+         */
+        public double getFMeasure() {
+            return fmeasure;
+        }
+
+        /**
+         * @return the number of (parameter set, track) evaluations used
+         */
+        public int getEvaluations() {
+            return evaluations;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * ParameterSweep.java
+ *
+ * The peak picking of one detection function with many parameter sets, for
+ * the parameter study.
+ *
+ * Processor.analyze() computes, normalizes and picks the detection function
+ * again for every call. Only the peak picking depends on m, w, alpha and
+ * delta, so a sweep takes the normalized detection function once (see
+ * Processor.sweep()) and keeps its PeakPicker; every parameter set then
+ * costs one O(N) pass.
+ */
+package at.cp.jku.teaching.amprocessing;
+
+import java.util.LinkedList;
+
+/**
+ *
+ * @author mru
+ */
+public class ParameterSweep {
+
+    private final int algorithm;
+    private final PeakPicker picker;
+    private final double hopTime;
+    private final Metrics metrics;
+
+    /**
+     * @param normalized the normalized detection function, it is not copied
+     * @param hopTime seconds per frame
+     * @param metrics collects the peak picking times
+     */
+    ParameterSweep(int algorithm, double[] normalized, double hopTime, Metrics metrics) {
+        this.algorithm = algorithm;
+        this.picker = new PeakPicker(normalized);
+        this.hopTime = hopTime;
+        this.metrics = metrics;
+    }
+
+    public int getAlgorithm() {
+        return algorithm;
+    }
+
+    Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the onsets in seconds, as analyze() would find them after
+     * setup(algorithm, w, m, alpha, delta)
+     */
+    public LinkedList<Double> onsets(int m, int w, double alpha, double delta) {
+        Metrics.Timer timer = metrics.start(Metrics.PEAKS);
+        LinkedList<Double> onsets = new LinkedList<Double>();
+        for (int p : picker.pick(m, w, alpha, delta)) {
+            onsets.add(p * hopTime);
+        }
+        timer.stop();
+        return onsets;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * PeakPicker.java
+ *
+ * The peak picking of [1] in Processor, on a normalized detection function.
+ *
+ * Frame n is a peak if
+ *   1. data[n] >= g(n), g an exponentially decaying threshold (alpha),
+ *   2. data[n] >= data[k] for all k in [n - w, n + w],
+ *   3. data[n] >= delta + mean(data[n - m * w .. n + w]).
+ *
+ * dixonDirect() scans both windows for every frame, O(N * m * w) in the
+ * worst case (e.g. the plateaus of silent passages). A PeakPicker gives
+ * exactly the same peaks in O(N) per call, independent of m and w, from two
+ * tables that only depend on the data and are built once, in O(N):
+ *   - for 2. the distance from every frame to the nearest strictly larger
+ *     value on either side (monotonic stack); frame n is a local maximum
+ *     if both distances exceed w,
+ *   - for 3. the prefix sums; a window sum is the difference of two. Its
+ *     rounding error is bounded (sumError()); only if data[n] lies within
+ *     that bound of the threshold, the window is summed again in the order
+ *     of the direct scan, so every decision is the one dixonDirect() makes.
+ * The same picker can be asked for any number of parameter sets. The tables
+ * rely on an ordering of the values, so data with NaN or infinite values
+ * (e.g. a constant detection function, 0/0 after the normalization) is
+ * handed to dixonDirect().
+ */
+package at.cp.jku.teaching.amprocessing;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ *
+ * @author mru
+ */
+public class PeakPicker {
+
+    // the unit roundoff of double
+    private static final double U = Math.ulp(1.0) / 2;
+    private final double[] data;
+    private final boolean finite;
+    // prefix[j] = data[0] + ... + data[j - 1]
+    private final double[] prefix;
+    // the distance to the nearest larger value on the left / right,
+    // Integer.MAX_VALUE if there is none
+    private final int[] left;
+    private final int[] right;
+    private final double sumError;
+
+    /**
+     * @param data the normalized detection function; it must not change
+     * while the picker is used
+     */
+    public PeakPicker(double[] data) {
+        this.data = data;
+        this.finite = finite(data);
+        final int length = data.length;
+        if (!finite) {
+            prefix = null;
+            left = null;
+            right = null;
+            sumError = 0.0;
+            return;
+        }
+
+        prefix = new double[length + 1];
+        double absSum = 0.0;
+        for (int j = 0; j < length; j++) {
+            prefix[j + 1] = prefix[j] + data[j];
+            absSum += Math.abs(data[j]);
+        }
+        sumError = sumError(length, absSum);
+
+        left = new int[length];
+        right = new int[length];
+        final int[] stack = new int[length];
+        int top = 0;
+        for (int j = 0; j < length; j++) {
+            while (top > 0 && data[stack[top - 1]] <= data[j]) {
+                top--;
+            }
+            left[j] = top > 0 ? j - stack[top - 1] : Integer.MAX_VALUE;
+            stack[top++] = j;
+        }
+        top = 0;
+        for (int j = length - 1; j >= 0; j--) {
+            while (top > 0 && data[stack[top - 1]] <= data[j]) {
+                top--;
+            }
+            right[j] = top > 0 ? stack[top - 1] - j : Integer.MAX_VALUE;
+            stack[top++] = j;
+        }
+    }
+
+    /**
+     * peak picking with one set of parameters, in O(N)
+     * @return the peak frames, ascending
+     */
+    public List<Integer> pick(final int m, final int w, final double alpha, final double delta) {
+        if (!finite || m < 1 || w < 0) {
+            return dixonDirect(data, m, w, alpha, delta);
+        }
+        final int windowLength = m * w + w + 1;
+
+        double ga;
+        double ga_next = Double.MIN_VALUE;
+
+        List<Integer> peaks = new LinkedList<Integer>();
+
+        outer:
+        for (int n = w * m; n < data.length - (w + 1); n++) {
+
+            ga = ga_next;
+            ga_next = Math.max(data[n], alpha * ga + (1.0 - alpha) * data[n]);
+            if (data[n] < ga) {
+                continue outer;
+            }
+
+            if (left[n] <= w || right[n] <= w) {
+                continue outer;
+            }
+
+            final double sum = prefix[n + w + 1] - prefix[n - m * w];
+            final double threshold = delta + (sum / windowLength);
+            final double tolerance = sumError + 8 * U * (Math.abs(delta) + Math.abs(threshold) + Math.abs(data[n]));
+            if (data[n] < threshold - tolerance) {
+                continue outer;
+            }
+            if (data[n] <= threshold + tolerance && data[n] < directThreshold(data, n, m, w, delta)) {
+                continue outer;
+            }
+
+            peaks.add(n);
+        }
+        return peaks;
+    }
+
+    /**
+     * peak picking in O(N), see above
+     * @param data the normalized detection function
+     * @return the peak frames, ascending
+     */
+    public static List<Integer> dixon(final double[] data, final int m, final int w, final double alpha, final double delta) {
+        return new PeakPicker(data).pick(m, w, alpha, delta);
+    }
+
+    /**
+     * peak picking as described in [1], scanning both windows for every
+     * frame
+     * @param data the normalized detection function
+     * @return the peak frames, ascending
+     */
+    public static List<Integer> dixonDirect(final double[] data, final int m, final int w, final double alpha, final double delta) {
+        double ga;
+        double ga_next = Double.MIN_VALUE;
+
+        List<Integer> peaks = new LinkedList<Integer>();
+
+        // simple peak picking
+        outer:
+        for (int n = w * m; n < data.length - (w + 1); n++) {
+
+            ga = ga_next;
+            ga_next = Math.max(data[n], alpha * ga + (1.0 - alpha) * data[n]);
+
+            if (data[n] < ga) {
+                continue outer;
+            }
+
+            for (int k = n - w; k <= n + w; k++) {
+                if (k != n) {
+                    if (data[n] < data[k]) {
+                        continue outer;
+                    }
+                }
+            }
+
+            if (data[n] < directThreshold(data, n, m, w, delta)) {
+                continue outer;
+            }
+
+            peaks.add(n);
+        }
+        return peaks;
+    }
+
+    // delta + the window mean, summed in index order
+    private static double directThreshold(final double[] data, final int n, final int m, final int w, final double delta) {
+        double sum1 = 0.0;
+        for (int k = n - m * w; k <= n + w; k++) {
+            sum1 += data[k];
+        }
+        return delta + (sum1 / (m * w + w + 1));
+    }
+
+    /**
+     * a bound for the difference between a window sum taken from the prefix
+     * sums and the same sum in index order: each one is off from the exact
+     * sum by at most about length * U * absSum; the factor 4 covers both and
+     * the rounding of absSum itself.
+     */
+    private static double sumError(final int length, final double absSum) {
+        return 4 * (length + 1) * U * absSum;
+    }
+
+    private static boolean finite(final double[] data) {
+        for (double d : data) {
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
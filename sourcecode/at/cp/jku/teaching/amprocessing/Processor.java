@@ -18,17 +18,23 @@
  */
 package at.cp.jku.teaching.amprocessing;
 
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import static java.lang.Math.*;
-import static at.cp.jku.teaching.amprocessing.SpectralData.normalizeAngle;
 
 /**
+ * analyze(AnalysisConfig) and sweep() only read the spectrogram, so several
+ * threads may call them at once. The older setup() / analyze() / get*()
+ * methods keep their state in the Processor and are not thread safe.
  *
  * @author andreas arzt
  */
 public class Processor {
 
+    // the STFT parameters: window length and hop time in seconds
+    static final double FFT_TIME = 0.02322;
+    static final double HOP_TIME = 0.005;
     private String m_filename;
     AudioFile m_audiofile;
     // this List should contain your results of the onset detection step (onset times in seconds)
@@ -38,8 +44,11 @@ public class Processor {
     // this variable should contain your result of the tempo estimation algorithm
     private double m_tempo;
     double[] onsetDetectionFunction;
+    // the detection functions computed by precompute(), index = algorithm
+    private volatile double[][] odfCache;
     double[] acf = new double[0];
-    List<Integer> ioi = new LinkedList<Integer>();
+    // the inter onset interval histogram of bdf_ioi(), index = distance in frames
+    int[] ioi = new int[0];
     private final int bpmMin = 50;
     private final int bpmMax = 200;
     private int odf_algorithm;
@@ -48,15 +57,41 @@ public class Processor {
     private Integer setup_w = null;
     private Double setup_alpha = null;
     private Double setup_delta = null;
+    private final boolean fastMath;
+    // the stage times of this file
+    private final Metrics metrics = new Metrics();
 
     public Processor(String filename, int algorithm) {
-        this(filename);
+        this(filename, algorithm, null);
+    }
+
+    public Processor(String filename, int algorithm, SpectrogramCache cache) {
+        this(filename, algorithm, cache, false);
+    }
+
+    public Processor(String filename, int algorithm, SpectrogramCache cache, boolean fastMath) {
+        this(filename, cache, fastMath);
         this.odf_algorithm = algorithm;
     }
 
     public Processor(String filename) {
+        this(filename, null);
+    }
+
+    public Processor(String filename, SpectrogramCache cache) {
+        this(filename, cache, false);
+    }
+
+    /**
+     * @param cache STFT cache, may be null
+     * @param fastMath use the approximations in FastMath for the STFT phases
+     * and the detection functions, and keep the complex spectra for the
+     * trig-free complex domain detection functions
+     */
+    public Processor(String filename, SpectrogramCache cache, boolean fastMath) {
         Log.log("Initializing Processor...");
         m_filename = filename;
+        this.fastMath = fastMath;
         m_onsetList = new LinkedList<Double>();
         m_onsetListFrames = new LinkedList<Integer>();
 
@@ -65,11 +100,18 @@ public class Processor {
         Log.log("Reading Audio-File " + filename);
         Log.log("Performing FFT...");
         // an AudioFile object is created with the following Paramters: AudioFile(WAVFILENAME, FFTLENGTH in seconds, HOPLENGTH in seconds)
-        // if you would like to work with multiple resolutions you simple create multiple AudioFile objects with different parameters
+        // if you would like to work with multiple resolutions, pass arrays of FFTLENGTHs and HOPLENGTHs: the file is decoded once
+        // and AudioFile.getSpectrogram(r) returns the STFT of resolution r
         // given an audio file with 44.100 Hz the parameters below translate to an FFT with size 2048 points
         // Note that the value is not taken to be precise; it is adjusted so that the FFT Size is always power of 2.
 
-        m_audiofile = new AudioFile(m_filename, 0.02322, 0.005);
+        // the time domain samples are not used here, so they are not stored
+        m_audiofile = new AudioFile(m_filename, FFT_TIME, HOP_TIME, false);
+        m_audiofile.setCache(cache);
+        m_audiofile.setMetrics(metrics);
+        m_audiofile.setParallel(true);
+        m_audiofile.setFastMath(fastMath);
+        m_audiofile.setComplex(fastMath);
 
         //m_audiofile = new AudioFile(m_filename, 0.002322, 0.005);
         // this starts the extraction of the basis features (the STFT)
@@ -96,108 +138,143 @@ public class Processor {
     public void analyze() {
         Log.log("Running Analysis...");
 
+        AnalysisResult result = analyze(currentConfig());
 
-        final int numSamples = m_audiofile.spectralDataContainer.size();
-        onsetDetectionFunction = new double[numSamples];
-        m_onsetList.clear();
-
-        List<Integer> peaks;
-        switch (odf_algorithm) {
-            case 1:
-                peaks = odf_phase_deviation();
-                break;
-            case 2:
-                peaks = odf_spectral_flux();
-                break;
-            case 3:
-                peaks = odf_complex_domain();
-                break;
-            case 4:
-                peaks = odf_weighted_phase_deviation();
-                break;
-            case 5:
-                peaks = odf_normalized_weighted_phase_deviation();
-                break;
-            case 6:
-                peaks = odf_rectified_complex_domain();
-                break;
-            case 7:
-                peaks = odf_frame_distance();
-                break;
-
-            case 8:
-                peaks = odf_frame_distance_2();
-                break;
-
-            case 9:
-                peaks = odf_hfc_1();
-                break;
-
-            case 10:
-                peaks = odf_hfc_2();
-                break;
-
-            default:
-                peaks = null;
+        m_onsetList = new LinkedList<Double>(result.getOnsets());
+        m_tempo = result.getTempo();
+        onsetDetectionFunction = result.getDetectionFunction();
+        if (bdf_algorithm == AnalysisConfig.TEMPO_ACF) {
+            acf = result.getAcf();
         }
+        if (bdf_algorithm == AnalysisConfig.TEMPO_IOI) {
+            ioi = result.getIoi();
+        }
+    }
 
+    /**
+     * the configuration of analyze(): the default parameters of the
+     * algorithm, overridden by setup()
+     */
+    private AnalysisConfig currentConfig() {
+        AnalysisConfig c = new AnalysisConfig(odf_algorithm).withTempoAlgorithm(bdf_algorithm);
+        return c.withPeakPicking(
+                setup_m != null ? setup_m : c.getM(),
+                setup_w != null ? setup_w : c.getW(),
+                setup_alpha != null ? setup_alpha : c.getAlpha(),
+                setup_delta != null ? setup_delta : c.getDelta());
+    }
 
+    /**
+     * onset detection and tempo estimation with the given parameters. only
+     * reads the spectrogram (and the detection functions of precompute()),
+     * so several threads can analyze the same file at once.
+     */
+    public AnalysisResult analyze(AnalysisConfig config) {
+        final double hopTime = m_audiofile.hopTime;
+        double[] odf = detectionFunction(config.getAlgorithm());
+        Metrics.Timer timer = metrics.start(Metrics.PEAKS);
+        List<Integer> peaks = pickPeaksDixon(odf, config.getM(), config.getW(), config.getAlpha(), config.getDelta());
+        timer.stop();
+
+        LinkedList<Double> onsets = new LinkedList<Double>();
         for (int p : peaks) {
-            m_onsetList.add(p * m_audiofile.hopTime);
+            onsets.add(p * hopTime);
         }
 
-        switch (bdf_algorithm) {
-            case 1:
-                m_tempo = bdf_acf();
+        double tempo;
+        double[] r = new double[0];
+        int[] histogram = new int[0];
+        timer = metrics.start(Metrics.TEMPO);
+        switch (config.getTempoAlgorithm()) {
+            case AnalysisConfig.TEMPO_ACF:
+                r = bdf_acf(odf);
+                int peakIdx = bdf_acf_pick_peak_max(r);
+                System.out.println("peak at: " + peakIdx * hopTime);
+                tempo = 60.0 / (peakIdx * hopTime);
                 break;
-            case 2:
-                m_tempo = bdf_ioi();
+            case AnalysisConfig.TEMPO_IOI:
+                histogram = bdf_ioi(onsets);
+                tempo = 60 / (findMax(histogram) * hopTime);
                 break;
             default:
-                m_tempo = 0;
+                tempo = 0;
 
         }
+        timer.stop();
+        return new AnalysisResult(config, onsets, tempo, odf, r, histogram);
+    }
 
+    /**
+     * computes the detection functions of several algorithms in a single
+     * pass over the spectrogram (see OdfEngine). analyze() then uses these
+     * instead of computing the detection function again.
+     */
+    public void precompute(int... algorithms) {
+        Metrics.Timer timer = metrics.start(Metrics.ODF);
+        odfCache = engine(algorithms).compute(m_audiofile.spectrogram);
+        timer.stop();
+    }
 
+    /**
+     * prepares the peak picking of an algorithm for many parameter sets:
+     * the detection function is computed (or taken from precompute()) and
+     * normalized once.
+     */
+    public ParameterSweep sweep(int algorithm) {
+        if (algorithm < 1 || algorithm > Odf.COUNT) {
+            throw new IllegalArgumentException("Unknown algorithm: " + algorithm);
+        }
+        double[] data = detectionFunction(algorithm);
+        normalizeArray(data);
+        return new ParameterSweep(algorithm, data, m_audiofile.hopTime, metrics);
+    }
+
+    /**
+     * @return a fresh copy of the (not normalized) detection function of
+     * the algorithm
+     */
+    private double[] detectionFunction(int algorithm) {
+        if (odfCache != null && odfCache[algorithm] != null) {
+            return odfCache[algorithm].clone();
+        }
+        Metrics.Timer timer = metrics.start(Metrics.ODF);
+        double[] odf = engine(algorithm).compute(m_audiofile.spectrogram)[algorithm];
+        timer.stop();
+        return odf;
+    }
+
+    private OdfEngine engine(int... algorithms) {
+        OdfEngine engine = new OdfEngine(algorithms);
+        engine.setFastMath(fastMath);
+        return engine;
     }
 
     /**
      * beat detection function: autocorrelation
-     * @return
+     * @param odf the normalized detection function
+     * @return the autocorrelation for the lags of bpmMax .. bpmMin
      */
-    private double bdf_acf() {
-        final int numSamples = m_audiofile.spectralDataContainer.size();
+    double[] bdf_acf(final double[] odf) {
+        final int numSamples = odf.length;
 
         final double[] rect_odf = new double[numSamples];
         for (int i = 0; i < numSamples; i++) {
-            rect_odf[i] = halfRect(onsetDetectionFunction[i]);
+            rect_odf[i] = Odf.halfRect(odf[i]);
         }
 
         final int from = bpmToIndex(bpmMax);
         final int to = bpmToIndex(bpmMin);
 
-        acf = new double[to];
-
-        for (int tau = from; tau < to; tau++) {
-            double r_tau = 0.0;
-            for (int k = 0; k < rect_odf.length - tau; k++) {
-                r_tau += rect_odf[k + tau] * rect_odf[k];
-            }
-            acf[tau] = r_tau;
-        }
-
-        int peakIdx = bdf_acf_pick_peak_max();
-
-        System.out.println("peak at: " + peakIdx * m_audiofile.hopTime);
-        return 60.0 / (peakIdx * m_audiofile.hopTime);
+        // O(N log N) via the FFT, the maximum is exact (see Acf)
+        return Acf.compute(rect_odf, from, to);
     }
 
-    private int bdf_acf_pick_peak_max() {
+    private int bdf_acf_pick_peak_max(final double[] acf) {
         return findMax(acf);
     }
 
-    private int bdf_acf_pick_peak_dixon() {
-        List<Integer> peaks = pickPeaksDixon(acf, 5, 5, 0.99, 0.5);
+    private int bdf_acf_pick_peak_dixon(final double[] acf) {
+        List<Integer> peaks = pickPeaksDixon(acf.clone(), 5, 5, 0.99, 0.5);
         if (peaks.isEmpty()) {
             return 0;
         } else {
@@ -211,35 +288,42 @@ public class Processor {
 
     /**
      * tempo extraction using inter onset intervals
-     * @return
+     *
+     * every ordered pair of onsets with a distance (in frames) in
+     * (bpmToIndex(bpmMax), bpmToIndex(bpmMin)) is counted. the onsets are
+     * sorted, so for each onset only the following ones within the largest
+     * distance are visited (and counted twice, for both orders): O(n * k)
+     * for k onsets per window instead of O(n^2).
+     * @param onsetList the onset times in seconds
+     * @return the histogram, index = distance in frames
      */
-    private double bdf_ioi() {
-
+    int[] bdf_ioi(final List<Double> onsetList) {
 
         final int from = bpmToIndex(bpmMax);
         final int to = bpmToIndex(bpmMin);
 
-        ioi.clear();
-
-        int[] hist = new int[to];
+        final double[] onsets = new double[onsetList.size()];
+        int i = 0;
+        for (double d : onsetList) {
+            onsets[i++] = d;
+        }
+        Arrays.sort(onsets);
 
-        for (double d1 : m_onsetList) {
-            for (double d2 : m_onsetList) {
+        final int[] ioi = new int[Math.max(to, 0)];
 
-                int distance = (int) (abs(d2 - d1) / m_audiofile.hopTime);
-                if (distance > from && distance < to) {
-                    hist[distance]++;
+        for (int a = 0; a < onsets.length; a++) {
+            for (int b = a + 1; b < onsets.length; b++) {
+                int distance = (int) ((onsets[b] - onsets[a]) / m_audiofile.hopTime);
+                if (distance >= to) {
+                    break;
+                }
+                if (distance > from) {
+                    ioi[distance] += 2;
                 }
             }
         }
 
-        for (int h : hist) {
-            ioi.add(h);
-        }
-
-        int peakIdx = 0;
-        peakIdx = findMax(ioi);
-        return 60 / (peakIdx * m_audiofile.hopTime);
+        return ioi;
     }
 
     private int findMax(final double[] d) {
@@ -254,304 +338,18 @@ public class Processor {
         return idx;
     }
 
-    private int findMax(final List<Integer> d) {
+    private int findMax(final int[] d) {
         int max = Integer.MIN_VALUE;
         int idx = -1;
-        for (int i = 0; i < d.size(); i++) {
-            if (d.get(i) > max) {
-                max = d.get(i);
+        for (int i = 0; i < d.length; i++) {
+            if (d[i] > max) {
+                max = d[i];
                 idx = i;
             }
         }
         return idx;
     }
 
-    // alg 1
-    private List<Integer> odf_phase_deviation() {
-        final int numSamples = m_audiofile.spectralDataContainer.size();
-
-        for (int n = 2; n < numSamples; n++) {
-
-            final SpectralData f_n_2 = m_audiofile.spectralDataContainer.get(n - 2);
-            final SpectralData f_n_1 = m_audiofile.spectralDataContainer.get(n - 1);
-            final SpectralData f_n = m_audiofile.spectralDataContainer.get(n);
-
-            final double[] phi_n_0 = f_n.phases;
-            final double[] phi_n_1 = f_n_1.phases;
-            final double[] phi_n_2 = f_n_2.phases;
-
-            double dphi_acc = 0.0;
-            for (int k = 0; k < f_n.size; k++) {
-
-                final double dphi_n_0 = normalizeAngle(phi_n_1[k], phi_n_0[k]) - phi_n_1[k];
-                final double dphi_n_1 = normalizeAngle(phi_n_2[k], phi_n_1[k]) - phi_n_2[k];
-                final double d2phi_n = normalizeAngle(dphi_n_1, dphi_n_0) - dphi_n_1;
-
-                dphi_acc += abs(d2phi_n);
-            }
-            onsetDetectionFunction[n] = dphi_acc / f_n.size;
-        }
-
-        return pickPeaksDixon(onsetDetectionFunction, 50, 20, 1, 0.9);
-    }
-
-    // alg 2
-    private List<Integer> odf_spectral_flux() {
-
-
-        final int numSamples = m_audiofile.spectralDataContainer.size();
-
-        for (int n = 1; n < numSamples; n++) {
-
-            final SpectralData f_n = m_audiofile.spectralDataContainer.get(n);
-            final SpectralData f_n_1 = m_audiofile.spectralDataContainer.get(n - 1);
-            final double[] mag_n = f_n.magnitudes;
-            final double[] mag_n_1 = f_n_1.magnitudes;
-
-            double acc = 0.0;
-            for (int k = 0; k < f_n.size; k++) {
-                acc += halfRect(abs(mag_n[k]) - abs(mag_n_1[k]));
-            }
-            onsetDetectionFunction[n] = acc;
-        }
-
-        return pickPeaksDixon(onsetDetectionFunction, 5, 5, 0.9, 0.9);
-    }
-
-    // alg 3
-    private List<Integer> odf_complex_domain() {
-        // from dixon, implementation: confident
-        final int numSamples = m_audiofile.spectralDataContainer.size();
-
-        for (int n = 2; n < numSamples; n++) {
-
-            final SpectralData f_n_0 = m_audiofile.spectralDataContainer.get(n);
-            final SpectralData f_n_1 = m_audiofile.spectralDataContainer.get(n - 1);
-            final SpectralData f_n_2 = m_audiofile.spectralDataContainer.get(n - 2);
-            final double[] phi_n_0 = f_n_0.phases;
-            final double[] phi_n_1 = f_n_1.phases;
-            final double[] phi_n_2 = f_n_2.phases;
-            final double[] mag_n_0 = f_n_0.magnitudes;
-            final double[] mag_n_1 = f_n_1.magnitudes;
-
-            double deviation_acc = 0.0;
-            for (int k = 0; k < f_n_0.size; k++) {
-
-                final double dphi_n_1 = normalizeAngle(phi_n_2[k], phi_n_1[k]) - phi_n_2[k];
-
-                deviation_acc += radialDistance(mag_n_0[k], phi_n_0[k], mag_n_1[k], normalizeAngle(phi_n_1[k] + dphi_n_1, 0.0));
-            }
-            onsetDetectionFunction[n] = deviation_acc;
-        }
-
-        return pickPeaksDixon(onsetDetectionFunction, 3, 4, 0.3, 0.5);
-    }
-    // alg 4
-
-    private List<Integer> odf_weighted_phase_deviation() {
-        final int numSamples = m_audiofile.spectralDataContainer.size();
-
-        for (int n = 2; n < numSamples; n++) {
-            final SpectralData f_n_0 = m_audiofile.spectralDataContainer.get(n);
-            final SpectralData f_n_1 = m_audiofile.spectralDataContainer.get(n - 1);
-            final SpectralData f_n_2 = m_audiofile.spectralDataContainer.get(n - 2);
-            final double[] mag_n_0 = f_n_0.magnitudes;
-            final double[] phi_n_0 = f_n_0.phases;
-            final double[] phi_n_1 = f_n_1.phases;
-            final double[] phi_n_2 = f_n_2.phases;
-
-            double dphi_acc = 0.0;
-            for (int k = 0; k < f_n_0.size; k++) {
-
-                final double dphi_n_0 = normalizeAngle(phi_n_1[k], phi_n_0[k]) - phi_n_1[k];
-                final double dphi_n_1 = normalizeAngle(phi_n_2[k], phi_n_1[k]) - phi_n_2[k];
-                final double d2phi_n = normalizeAngle(dphi_n_1, dphi_n_0) - dphi_n_1;
-
-                dphi_acc += abs(mag_n_0[k] * d2phi_n);
-            }
-            onsetDetectionFunction[n] = dphi_acc / f_n_0.size;
-        }
-
-        return pickPeaksDixon(onsetDetectionFunction, 4, 4, 0.7, 0.9);
-    }
-    // alg 5
-
-    private List<Integer> odf_normalized_weighted_phase_deviation() {
-        final int numSamples = m_audiofile.spectralDataContainer.size();
-
-        for (int n = 2; n < numSamples; n++) {
-
-            final SpectralData f_n_0 = m_audiofile.spectralDataContainer.get(n);
-            final SpectralData f_n_1 = m_audiofile.spectralDataContainer.get(n - 1);
-            final SpectralData f_n_2 = m_audiofile.spectralDataContainer.get(n - 2);
-            final double[] mag_n_0 = f_n_0.magnitudes;
-            final double[] phi_n_0 = f_n_0.phases;
-            final double[] phi_n_1 = f_n_1.phases;
-            final double[] phi_n_2 = f_n_2.phases;
-
-            double dphi_acc = 0.0;
-            double mag_acc = 0.0;
-            for (int k = 0; k < f_n_0.size; k++) {
-
-                final double dphi_n_0 = normalizeAngle(phi_n_1[k], phi_n_0[k]) - phi_n_1[k];
-                final double dphi_n_1 = normalizeAngle(phi_n_2[k], phi_n_1[k]) - phi_n_2[k];
-                final double d2phi_n = normalizeAngle(dphi_n_1, dphi_n_0) - dphi_n_1;
-
-                double X_n_k = mag_n_0[k];
-                dphi_acc += abs(X_n_k * d2phi_n);
-                mag_acc += abs(X_n_k);
-            }
-            onsetDetectionFunction[n] = dphi_acc / mag_acc;
-        }
-
-        return pickPeaksDixon(onsetDetectionFunction, 5, 2, 0.9, 0.9);
-    }
-
-    // alg 6
-    private List<Integer> odf_rectified_complex_domain() {
-        // from dixon, implementation: confident
-        final int numSamples = m_audiofile.spectralDataContainer.size();
-
-        for (int n = 2; n < numSamples; n++) {
-
-            final SpectralData f_n_0 = m_audiofile.spectralDataContainer.get(n);
-            final SpectralData f_n_1 = m_audiofile.spectralDataContainer.get(n - 1);
-            final SpectralData f_n_2 = m_audiofile.spectralDataContainer.get(n - 2);
-            final double[] mag_n_0 = f_n_0.magnitudes;
-            final double[] mag_n_1 = f_n_1.magnitudes;
-            final double[] phi_n_0 = f_n_0.phases;
-            final double[] phi_n_1 = f_n_1.phases;
-            final double[] phi_n_2 = f_n_2.phases;
-
-            double deviation_acc = 0.0;
-            for (int k = 0; k < f_n_0.size; k++) {
-                if (mag_n_0[k] >= mag_n_1[k]) {
-
-                    final double dphi_n_1 = normalizeAngle(phi_n_2[k], phi_n_1[k]) - phi_n_2[k];
-
-                    deviation_acc += radialDistance(mag_n_0[k], phi_n_0[k], mag_n_1[k], normalizeAngle(phi_n_1[k] + dphi_n_1, 0.0));
-                }
-            }
-            onsetDetectionFunction[n] = deviation_acc;
-        }
-
-        return pickPeaksDixon(onsetDetectionFunction, 4, 4, 0.85, 0.9);
-    }
-
-    // alg 7
-    private List<Integer> odf_frame_distance() {
-
-        final int numSamples = m_audiofile.spectralDataContainer.size();
-
-        for (int n = 1; n < numSamples; n++) {
-
-            final SpectralData f_n_0 = m_audiofile.spectralDataContainer.get(n);
-            final SpectralData f_n_1 = m_audiofile.spectralDataContainer.get(n - 1);
-            final double[] mag_n_0 = f_n_0.magnitudes;
-            final double[] mag_n_1 = f_n_1.magnitudes;
-            final double[] phi_n_0 = f_n_0.phases;
-            final double[] phi_n_1 = f_n_1.phases;
-
-            double sum = 0.0;
-            for (int k = 0; k < f_n_0.size; k++) {
-                // i assume currentFrame.size == lastFrame.size
-
-                double diff = radialDistance(mag_n_0[k], phi_n_0[k], mag_n_1[k], phi_n_1[k]);
-                sum += abs(diff);
-            }
-
-            //sum /= currentFrame.size;
-
-            onsetDetectionFunction[n] = sum;
-        }
-
-        return pickPeaksDixon(onsetDetectionFunction, 3, 5, 0.5, 0.9);
-    }
-
-    // alg 8
-    private List<Integer> odf_frame_distance_2() {
-
-        final int numSamples = m_audiofile.spectralDataContainer.size();
-
-        for (int n = 1; n < numSamples; n++) {
-
-            final SpectralData f_n_0 = m_audiofile.spectralDataContainer.get(n);
-            final SpectralData f_n_1 = m_audiofile.spectralDataContainer.get(n - 1);
-            final double[] mag_n_0 = f_n_0.magnitudes;
-            final double[] mag_n_1 = f_n_1.magnitudes;
-            final double[] phi_n_0 = f_n_0.phases;
-
-            double sum = 0.0;
-            for (int k = 0; k < f_n_0.size; k++) {
-                // i assume currentFrame.size == lastFrame.size
-
-                double diff = radialDistance(mag_n_0[k], phi_n_0[k], mag_n_1[k], phi_n_0[k]);
-                sum += abs(diff);
-            }
-
-            onsetDetectionFunction[n] = sum;
-        }
-
-        return pickPeaksDixon(onsetDetectionFunction, 3, 2, 0.3, 0.9);
-    }
-
-    // alg 9 [5]
-    private List<Integer> odf_hfc_1() {
-
-        final int frameCount = m_audiofile.spectralDataContainer.size();
-        final int frameSize = m_audiofile.spectralDataContainer.get(0).size;
-
-        double hfc_n = 1.0;
-        double hfc_n_1 = Double.NaN;
-
-        for (int n = 0; n < frameCount; n++) {
-
-            final SpectralData f_n_0 = m_audiofile.spectralDataContainer.get(n);
-            final double[] mag_n_0 = f_n_0.magnitudes;
-
-            hfc_n_1 = hfc_n;
-            hfc_n = 0.0;
-            double mag_acc = 0.0;
-            for (int k = frameSize/2; k < frameSize; k++) {
-                double mag = mag_n_0[k] * mag_n_0[k];
-                hfc_n += mag * k;
-                mag_acc += mag;
-            }
-
-            onsetDetectionFunction[n] = (hfc_n / hfc_n_1) * (hfc_n / mag_acc);
-        }
-
-        return pickPeaksDixon(onsetDetectionFunction, 5, 4, 0.4, 0.7);
-    }
-
-    // alg 10 [5]
-    private List<Integer> odf_hfc_2() {
-
-        final int frameCount = m_audiofile.spectralDataContainer.size();
-        final int frameSize = m_audiofile.spectralDataContainer.get(0).size;
-
-        double hfc_n = 0.0;
-        double hfc_n_1 = Double.NaN;
-
-        for (int n = 0; n < frameCount; n++) {
-
-            final SpectralData f_n_0 = m_audiofile.spectralDataContainer.get(n);
-            final double[] mag_n_0 = f_n_0.magnitudes;
-
-            hfc_n_1 = hfc_n;
-            hfc_n = 0.0;
-            for (int k = frameSize/2; k < frameSize; k++) {
-
-                hfc_n += abs(mag_n_0[k]) * k * k;
-
-            }
-
-            onsetDetectionFunction[n] = hfc_n - hfc_n_1;
-        }
-
-        return pickPeaksDixon(onsetDetectionFunction, 5, 4, 0.85, 0.9);
-    }
-
     /**
      * normalize the array values such that:
      * mean(data) = 0
@@ -567,80 +365,18 @@ public class Processor {
     }
 
     /**
-     * peak picking as described in [1]
-     * @param data
+     * peak picking as described in [1], in O(N) (see PeakPicker)
+     * @param data normalized in place
      * @param m
      * @param w
      * @param alpha
      * @param delta
      * @return
      */
-    private List<Integer> pickPeaksDixon(double[] data, int m, int w, double alpha, double delta) {
-
-        // this is needed for the parameter study
-        // if the member "delta" is set, override the given parameter
-        // @see: setup()
-
-        if (this.setup_delta != null) {
-            delta = this.setup_delta;
-        }
-        if (this.setup_alpha != null) {
-            alpha = this.setup_alpha;
-        }
-        if (this.setup_w != null) {
-            w = this.setup_w;
-        }
-        if (this.setup_m != null) {
-            m = this.setup_m;
-        }
-
+    List<Integer> pickPeaksDixon(double[] data, int m, int w, double alpha, double delta) {
         normalizeArray(data);
 
-        double ga;
-        double ga_next = Double.MIN_VALUE;
-
-        List<Integer> peaks = new LinkedList<Integer>();
-
-        // simple peak picking
-        outer:
-        for (int n = w * m; n < data.length - (w + 1); n++) {
-
-            if (alpha != Double.NaN) {
-
-                ga = ga_next;
-                ga_next = max(data[n], alpha * ga + (1.0 - alpha) * data[n]);
-
-                if (data[n] < ga) {
-                    continue outer;
-                }
-            }
-
-            inner:
-            for (int k = n - w; k <= n + w; k++) {
-                if (k != n) {
-                    if (data[n] < data[k]) {
-                        continue outer;
-                    }
-                }
-            }
-
-            if (delta != Double.NaN) {
-
-                double sum1 = 0.0;
-                for (int k = n - m * w; k <= n + w; k++) {
-                    sum1 += data[k];
-                }
-
-                sum1 = delta + (sum1 / (m * w + w + 1));
-
-                if (data[n] < sum1) {
-                    continue outer;
-                }
-            }
-
-            peaks.add(n);
-        }
-        return peaks;
+        return PeakPicker.dixon(data, m, w, alpha, delta);
     }
 
     /**
@@ -670,13 +406,19 @@ public class Processor {
         return sqrt(sum / d.length);
     }
 
-    private double halfRect(final double d) {
-        return (d + abs(d)) / 2;
+    public String getFilename() {
+        return m_filename;
+    }
+
+    public boolean isFastMath() {
+        return fastMath;
     }
 
-    private double radialDistance(final double m1, final double phi1, final double m2, final double phi2) {
-        //  http://en.wikipedia.org/wiki/Radial_distance_(geometry)
-        return sqrt(m1 * m1 + m2 * m2 - 2 * m1 * m2 * cos(phi1 - phi2));
+    /**
+     * @return the stage times of this file
+     */
+    public Metrics getMetrics() {
+        return metrics;
     }
 
     public LinkedList<Double> getOnsets() {
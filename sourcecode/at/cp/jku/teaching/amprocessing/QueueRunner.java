@@ -0,0 +1,327 @@
+/*
+ * QueueRunner.java
+ *
+ * The parameter study of ParamStudyRunner for a corpus, spread over any
+ * number of worker JVMs through a WorkQueue in a shared directory; replaces
+ * the PBS array job with one task per track (run_pbs.sh).
+ *
+ * The coordinator puts one unit per (track, algorithm, row m, w of the grid)
+ * into the queue, puts the units of dead workers back, and finally merges
+ * the results of every track into the files of ParamStudyRunner:
+ * DIR/NAME.onsets.paramstudy.results and the .eval files; the results of the
+ * queue replace those already in there. The workers take units until all
+ * are done; a worker keeps the STFT and the detection functions of its last
+ * track and prefers the units of that track. A worker touches the claim of
+ * its unit after loading a track and every HEARTBEAT, so only the units of
+ * dead workers time out.
+ *
+ * Coordinator and workers may be started in any order, and both may be
+ * restarted: finished units are not computed again.
+ */
+package at.cp.jku.teaching.amprocessing;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+
+/**
+ *
+ * @author mru
+ */
+public class QueueRunner {
+
+    // between two looks at the queue
+    private static final long POLL = 1000;
+    // between two touches of the claim of a worker
+    private static final long HEARTBEAT = 60 * 1000;
+
+    private QueueRunner() {
+    }
+
+    /*
+     * Options:
+     * -d QUEUEDIR (the shared queue directory)
+     * -w (run a worker, default: the coordinator)
+     *
+     * coordinator:
+     * -i DIR or GLOB (the wav files; NAME.onsets next to NAME.wav is the ground truth)
+     * -o DIR (the output directory)
+     * -t TIMEOUT (seconds after which the unit of a silent worker is put back, default 600;
+     *    a worker touches its claim every 60 seconds)
+     *
+     * worker:
+     * -c CACHEDIR (directory for cached STFTs, optional!)
+     * -f (fast math, see FastMath, optional!)
+     * -j THREADS (default: number of processors)
+     *
+     * exits with 1 if a unit failed
+     */
+    public static void main(String[] args) {
+        OptionParser parser = new OptionParser("qwfd:i:o:t:c:j:");
+        OptionSet options = parser.parse(args);
+
+        if (options.has("q")) {
+            Log.doLog = false;
+        }
+
+        if (!options.has("d")) {
+            Log.log("Queue directory required! (-d QUEUEDIR)");
+            System.exit(1);
+        }
+        WorkQueue queue = new WorkQueue(new File(options.valueOf("d").toString()));
+
+        try {
+            if (options.has("w")) {
+                SpectrogramCache cache = null;
+                if (options.has("c")) {
+                    cache = new SpectrogramCache(new File(options.valueOf("c").toString()));
+                }
+                int threads = Runtime.getRuntime().availableProcessors();
+                if (options.has("j")) {
+                    threads = Integer.parseInt(options.valueOf("j").toString());
+                }
+                work(queue, cache, options.has("f"), threads);
+            } else {
+                if (!options.has("i")) {
+                    Log.log("Input directory or pattern required! (-i INPUT)");
+                    System.exit(1);
+                }
+                if (!options.has("o")) {
+                    Log.log("Output Directory required! (-o OUTPUTDIR)");
+                    System.exit(1);
+                }
+                String outputDirectory = options.valueOf("o").toString();
+                if (!new File(outputDirectory).exists()) {
+                    Log.log("Output directory does not exist!");
+                    System.exit(1);
+                }
+                if (!outputDirectory.endsWith("/")) {
+                    outputDirectory = outputDirectory + "/";
+                }
+                long timeout = 600;
+                if (options.has("t")) {
+                    timeout = Long.parseLong(options.valueOf("t").toString());
+                }
+                if (timeout * 1000 <= 2 * HEARTBEAT) {
+                    Log.log("Timeout below two heartbeats of the workers, units in work may be put back");
+                }
+                coordinate(queue, options.valueOf("i").toString(), outputDirectory, timeout * 1000);
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(QueueRunner.class.getName()).log(Level.SEVERE, null, ex);
+            System.exit(1);
+        } catch (InterruptedException ex) {
+            Logger.getLogger(QueueRunner.class.getName()).log(Level.SEVERE, null, ex);
+            System.exit(1);
+        }
+
+        if (!queue.failed().isEmpty()) {
+            Log.log(queue.failed().size() + " units failed: " + queue.failed());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * fills the queue, waits for the workers and merges the results
+     */
+    private static void coordinate(WorkQueue queue, String input, String outputDirectory, long timeoutMillis)
+            throws IOException, InterruptedException {
+        List<WorkQueue.Unit> units = new ArrayList<WorkQueue.Unit>();
+        Set<String> tracks = new LinkedHashSet<String>();
+        for (File wav : BatchRunner.wavFiles(input)) {
+            String name = wav.getName().substring(0, wav.getName().lastIndexOf("."));
+            File onsets = new File(wav.getParentFile(), name + ".onsets");
+            if (!onsets.exists()) {
+                continue;
+            }
+            tracks.add(name);
+            for (int alg : ParamStudyRunner.ALGORITHMS) {
+                for (int m = SearchSpace.GRID.mMin; m <= SearchSpace.GRID.mMax; m++) {
+                    for (int w = SearchSpace.GRID.wMin; w <= SearchSpace.GRID.wMax; w++) {
+                        units.add(new WorkQueue.Unit(name, alg, m, w, wav.getPath(), onsets.getPath()));
+                    }
+                }
+            }
+        }
+        queue.create(units);
+        Log.log(tracks.size() + " tracks, " + units.size() + " units");
+
+        int[] last = null;
+        while (!queue.isFinished()) {
+            Thread.sleep(POLL);
+            queue.requeue(timeoutMillis);
+            int[] c = queue.count();
+            if (last == null || c[0] != last[0] || c[1] != last[1]) {
+                Log.log("done " + c[0] + " failed " + c[1] + " running " + c[2] + " waiting " + c[3]);
+                last = c;
+            }
+        }
+
+        for (String name : tracks) {
+            merge(queue.results(name), outputDirectory, name);
+        }
+    }
+
+    /**
+     * writes the results of the units of a track to the result store and the
+     * .eval files; the records of the queue replace those of an earlier
+     * study of the same inputs in the store, the others are kept
+     */
+    private static void merge(List<File> results, String outputDirectory, String name) throws IOException {
+        if (results.isEmpty()) {
+            return;
+        }
+        // the inputs the workers have seen
+        byte[] fingerprint = null;
+        Map<ResultStore.Record, ResultStore.Record> merged = new LinkedHashMap<ResultStore.Record, ResultStore.Record>();
+        for (File f : results) {
+            ResultStore unit = new ResultStore(f, null);
+            unit.close();
+            if (fingerprint == null) {
+                fingerprint = unit.getFingerprint();
+            } else if (!Arrays.equals(fingerprint, unit.getFingerprint())) {
+                Log.log("Skipped, computed from other inputs: " + f);
+                continue;
+            }
+            for (ResultStore.Record r : unit.records()) {
+                merged.put(r, r);
+            }
+        }
+
+        File file = new File(ParamStudyRunner.storeFileName(outputDirectory, name));
+        List<ResultStore.Record> records = new ArrayList<ResultStore.Record>();
+        if (file.exists()) {
+            ResultStore old = new ResultStore(file, fingerprint);
+            old.close();
+            for (ResultStore.Record r : old.records()) {
+                if (!merged.containsKey(r)) {
+                    records.add(r);
+                }
+            }
+        }
+        records.addAll(merged.values());
+
+        // replaced at once, a crash leaves the old store
+        File tmp = new File(file.getPath() + ".tmp");
+        tmp.delete();
+        ResultStore store = new ResultStore(tmp, fingerprint);
+        try {
+            for (ResultStore.Record r : records) {
+                store.append(r);
+            }
+        } finally {
+            store.close();
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+        ResultStore.exportEval(records, outputDirectory + name);
+        Log.log("Merged " + name);
+    }
+
+    /**
+     * takes units until the queue is finished
+     */
+    private static void work(final WorkQueue queue, SpectrogramCache cache, boolean fastMath, int threads)
+            throws IOException, InterruptedException {
+        String worker = ManagementFactory.getRuntimeMXBean().getName();
+        while (!queue.isReady()) {
+            Thread.sleep(POLL);
+        }
+        Log.log("Worker " + worker);
+
+        // the unit in work, its claim is touched every HEARTBEAT
+        final AtomicReference<WorkQueue.Unit> current = new AtomicReference<WorkQueue.Unit>();
+        Timer heartbeat = new Timer("heartbeat", true);
+        heartbeat.schedule(new TimerTask() {
+
+            @Override
+            public void run() {
+                WorkQueue.Unit u = current.get();
+                if (u != null) {
+                    queue.touch(u);
+                }
+            }
+        }, HEARTBEAT, HEARTBEAT);
+
+        // the last track
+        String track = null;
+        Processor p = null;
+        List<Double> groundtruthOnsets = null;
+        byte[] fingerprint = null;
+        Map<Integer, ParameterSweep> sweeps = new HashMap<Integer, ParameterSweep>();
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            while (!queue.isFinished()) {
+                WorkQueue.Unit u = queue.claim(worker, track);
+                if (u == null) {
+                    Thread.sleep(POLL);
+                    continue;
+                }
+                current.set(u);
+                try {
+                    if (!u.track.equals(track)) {
+                        track = null;
+                        sweeps.clear();
+                        p = new Processor(u.wav, cache, fastMath);
+                        p.precompute(ParamStudyRunner.ALGORITHMS);
+                        groundtruthOnsets = OnsetEvaluation.readOnsets(u.onsets);
+                        fingerprint = ResultStore.fingerprint(u.wav, groundtruthOnsets, fastMath);
+                        track = u.track;
+                        queue.touch(u);
+                    }
+                    ParameterSweep sweep = sweeps.get(u.algorithm);
+                    if (sweep == null) {
+                        sweep = p.sweep(u.algorithm);
+                        sweeps.put(u.algorithm, sweep);
+                    }
+
+                    File f = queue.temporaryResults(u);
+                    f.delete();
+                    ResultStore store = new ResultStore(f, fingerprint);
+                    try {
+                        for (ResultStore.Record r : BatchRunner.invokeAll(pool,
+                                ParamStudyRunner.row(sweep, groundtruthOnsets, u.m, u.w, store))) {
+                            store.append(r);
+                        }
+                    } finally {
+                        store.close();
+                    }
+                    queue.complete(u);
+                } catch (IOException ex) {
+                    Logger.getLogger(QueueRunner.class.getName()).log(Level.SEVERE, u.name, ex);
+                    queue.fail(u, ex);
+                } catch (ExecutionException ex) {
+                    Logger.getLogger(QueueRunner.class.getName()).log(Level.SEVERE, u.name, ex);
+                    queue.fail(u, ex);
+                } catch (RuntimeException ex) {
+                    Logger.getLogger(QueueRunner.class.getName()).log(Level.SEVERE, u.name, ex);
+                    queue.fail(u, ex);
+                } finally {
+                    current.set(null);
+                }
+            }
+        } finally {
+            heartbeat.cancel();
+            pool.shutdown();
+        }
+    }
+}
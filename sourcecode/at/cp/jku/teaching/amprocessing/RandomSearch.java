@@ -0,0 +1,40 @@
+/*
+ * RandomSearch.java
+ *
+ * Evaluates a fixed number of random parameter sets on all tracks, either
+ * independent uniform samples or a Latin hypercube sample (every range
+ * split into as many strata as samples, each stratum used once), which
+ * covers every single parameter evenly with the same budget.
+ */
+package at.cp.jku.teaching.amprocessing;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ *
+ * @author mru
+ */
+public class RandomSearch extends ParameterSearch {
+
+    private final int samples;
+    private final boolean latinHypercube;
+
+    public RandomSearch(SearchSpace space, List<ParameterSweep> sweeps, List<List<Double>> groundtruth,
+            ExecutorService pool, long seed, int samples, boolean latinHypercube) {
+        super(space, sweeps, groundtruth, pool, seed);
+        if (samples < 1) {
+            throw new IllegalArgumentException("At least one sample required: " + samples);
+        }
+        this.samples = samples;
+        this.latinHypercube = latinHypercube;
+    }
+
+    @Override
+    public Result search() throws InterruptedException, ExecutionException {
+        List<Candidate> candidates = latinHypercube ? latinHypercube(samples) : uniform(samples);
+        evaluate(candidates, tracks());
+        return result(candidates);
+    }
+}
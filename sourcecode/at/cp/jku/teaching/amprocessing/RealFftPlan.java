@@ -0,0 +1,129 @@
+/*
+ * RealFftPlan.java
+ */
+package at.cp.jku.teaching.amprocessing;
+
+/** A precomputed FFT of a fixed size for real input data.
+ *  The n real samples are packed into n/2 complex values (even samples as
+ *  real part, odd samples as imaginary part), transformed with a complex
+ *  FFT of size n/2 and then split into the n/2 + 1 non-redundant bins of
+ *  the real spectrum. This takes about half the work of a complex FFT of
+ *  size n with a zero imaginary part, and the polar conversion is only
+ *  done for the bins that are actually used.
+ *  A plan is immutable and may be shared between threads.
+ */
+public class RealFftPlan {
+
+    private final int n;
+    private final int half;
+    private final FftPlan halfPlan;
+    // cos and sin of 2 * PI * k / n for k = 0 .. n/4
+    private final double[] cos;
+    private final double[] sin;
+
+    /** Creates a plan for real FFTs of size n.
+     *  @param n the size of the FFT
+     *  @throws IllegalArgumentException if n is not a power of 2 or smaller
+     *  than 2
+     */
+    public RealFftPlan(int n) {
+        if (n < 2 || (n & (n - 1)) != 0) {
+            throw new IllegalArgumentException("FFT data must be power of 2");
+        }
+        this.n = n;
+        this.half = n / 2;
+        this.halfPlan = new FftPlan(half);
+        cos = new double[half / 2 + 1];
+        sin = new double[half / 2 + 1];
+        for (int k = 0; k <= half / 2; k++) {
+            double theta = FFT.twoPI * k / n;
+            cos[k] = Math.cos(theta);
+            sin[k] = Math.sin(theta);
+        }
+    }
+
+    /** @return the size of the FFT */
+    public int size() {
+        return n;
+    }
+
+    /** Computes the forward FFT of n real samples.
+     *  @param x  the real input data, n values; it is not modified
+     *  @param re receives the real part of the bins 0 .. n/2, must hold at
+     *  least n/2 + 1 values and must not be x
+     *  @param im receives the imaginary part of the bins 0 .. n/2, must hold
+     *  at least n/2 + 1 values and must not be x
+     */
+    public void fft(double[] x, double[] re, double[] im) {
+        if (x.length < n || re.length <= half || im.length <= half) {
+            throw new IllegalArgumentException("FFT data too short for the plan: " + n);
+        }
+        for (int m = 0; m < half; m++) {
+            re[m] = x[2 * m];
+            im[m] = x[2 * m + 1];
+        }
+        halfPlan.fft(re, im, FFT.FORWARD);
+
+        // split the spectrum of the packed sequence into the spectra of the
+        // even (E) and odd (O) samples and combine them: X[k] = E[k] + W^k O[k]
+        double z0r = re[0];
+        double z0i = im[0];
+        re[0] = z0r + z0i;
+        im[0] = 0;
+        re[half] = z0r - z0i;
+        im[half] = 0;
+        for (int k = 1; k <= half / 2; k++) {
+            int m = half - k;
+            double ar = re[k];
+            double ai = im[k];
+            double br = re[m];
+            double bi = im[m];
+
+            double er = (ar + br) / 2;
+            double ei = (ai - bi) / 2;
+            double or = (ai + bi) / 2;
+            double oi = (br - ar) / 2;
+
+            double c = cos[k];
+            double s = sin[k];
+            double wor = c * or + s * oi;
+            double woi = c * oi - s * or;
+
+            re[k] = er + wor;
+            im[k] = ei + woi;
+            if (m != k) {
+                re[m] = er - c * or - s * oi;
+                im[m] = -ei + c * oi - s * or;
+            }
+        }
+    } // fft()
+
+    /** Computes the forward FFT of n real samples and converts the bins
+     *  0 .. n/2 to polar coordinates (magnitude and phase).
+     *  @param x   the real input data, n values; it is not modified
+     *  @param mag receives the magnitudes, must hold at least n/2 + 1 values
+     *  @param ph  receives the phases, must hold at least n/2 + 1 values
+     */
+    public void magnitudePhaseFFT(double[] x, double[] mag, double[] ph) {
+        magnitudePhaseFFT(x, mag, ph, false);
+    } // magnitudePhaseFFT()
+
+    /** Same as magnitudePhaseFFT(x, mag, ph), the phases are computed with
+     *  FastMath.atan2() if fastMath is set.
+     */
+    public void magnitudePhaseFFT(double[] x, double[] mag, double[] ph, boolean fastMath) {
+        fft(x, mag, ph);
+        polar(mag, ph, mag, ph, fastMath);
+    } // magnitudePhaseFFT()
+
+    /** Converts the bins 0 .. n/2 to polar coordinates. mag and ph may be
+     *  the same arrays as re and im.
+     */
+    public void polar(double[] re, double[] im, double[] mag, double[] ph, boolean fastMath) {
+        for (int i = 0; i <= half; i++) {
+            double m = Math.sqrt(re[i] * re[i] + im[i] * im[i]);
+            ph[i] = fastMath ? FastMath.atan2(im[i], re[i]) : Math.atan2(im[i], re[i]);
+            mag[i] = m;
+        }
+    } // polar()
+} // class RealFftPlan
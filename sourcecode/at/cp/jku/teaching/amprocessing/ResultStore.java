@@ -0,0 +1,330 @@
+/*
+ * ResultStore.java
+ *
+ * The results of the parameter study of one track, in an append-only binary
+ * file with one fixed-size record per evaluated parameter set.
+ *
+ * ParamStudyRunner appends the records of every finished row of the grid
+ * and flushes them; after a crash, the points already in the store are not
+ * evaluated again. A record that was only partly written when the process
+ * died is cut off when the store is opened. Every track has its own file,
+ * so the parallel runners of run_paramstudy.sh and BatchRunner never write
+ * to the same one.
+ *
+ * The .eval text files of ParamStudyRunner are exported from the store
+ * with exportEval(), in the order of the grid.
+ *
+ * The header holds the fingerprint of the inputs of the study (see
+ * fingerprint()). A store of other inputs (a changed wav or ground truth
+ * file, another version of the algorithms) is not continued, but started
+ * again; its records would not belong to the new results.
+ *
+ * file layout (big endian, DataOutput):
+ *   int magic, int version, int recordSize, int reserved,
+ *   byte[20] fingerprint,
+ *   records: int algorithm, int m, int w, double alpha, double delta,
+ *            int TP, int FP, int FN
+ */
+package at.cp.jku.teaching.amprocessing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ *
+ * @author mru
+ */
+public class ResultStore {
+
+    private static final int MAGIC = 0x50535253; // "PSRS"
+    private static final int VERSION = 2;
+    private static final int FINGERPRINT_SIZE = 20;
+    private static final int HEADER_SIZE = 4 * 4 + FINGERPRINT_SIZE;
+    static final int RECORD_SIZE = 3 * 4 + 2 * 8 + 3 * 4;
+    // part of the fingerprint; bump it when the detection functions, the
+    // peak picking or the evaluation change the results
+    static final int ALGORITHM_VERSION = 1;
+    private final File file;
+    private byte[] fingerprint;
+    private final List<Record> records = new ArrayList<Record>();
+    private final Set<Record> done = new HashSet<Record>();
+    private DataOutputStream out;
+
+    /**
+     * opens the store, creates it if the file does not exist; a store with
+     * another fingerprint is replaced by an empty one
+     * @param fingerprint the inputs of the study (see fingerprint()), null:
+     * open the store of any inputs
+     */
+    public ResultStore(File file, byte[] fingerprint) throws IOException {
+        this.file = file;
+        this.fingerprint = fingerprint;
+        if (!(file.exists() && file.length() >= HEADER_SIZE && read())) {
+            if (fingerprint == null) {
+                throw new IOException("Not a result store: " + file);
+            }
+            DataOutputStream header = new DataOutputStream(new FileOutputStream(file));
+            try {
+                header.writeInt(MAGIC);
+                header.writeInt(VERSION);
+                header.writeInt(RECORD_SIZE);
+                header.writeInt(0);
+                header.write(fingerprint);
+            } finally {
+                header.close();
+            }
+        }
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+    }
+
+    /**
+     * @return false if the file is not a store of the fingerprint
+     */
+    private boolean read() throws IOException {
+        final long count = (file.length() - HEADER_SIZE) / RECORD_SIZE;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != RECORD_SIZE) {
+                if (fingerprint == null) {
+                    throw new IOException("Not a result store of this version: " + file);
+                }
+                Log.log("Not a result store of this version, starting a new one: " + file);
+                return false;
+            }
+            in.readInt();
+            byte[] stored = new byte[FINGERPRINT_SIZE];
+            in.readFully(stored);
+            if (fingerprint == null) {
+                fingerprint = stored;
+            } else if (!Arrays.equals(fingerprint, stored)) {
+                Log.log("The inputs of " + file + " have changed, starting a new store");
+                return false;
+            }
+            for (long i = 0; i < count; i++) {
+                Record r = new Record(in.readInt(), in.readInt(), in.readInt(), in.readDouble(), in.readDouble(),
+                        in.readInt(), in.readInt(), in.readInt());
+                records.add(r);
+                done.add(r);
+            }
+        } finally {
+            in.close();
+        }
+
+        // a record cut off by a crash
+        final long length = HEADER_SIZE + count * RECORD_SIZE;
+        if (file.length() != length) {
+            Log.log("Dropping an incomplete record of " + file);
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(length);
+            } finally {
+                raf.close();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * the fingerprint of the inputs of a parameter study: the content of the
+     * wav file, the ground truth, the STFT mode and ALGORITHM_VERSION
+     */
+    public static byte[] fingerprint(String wavFileName, List<Double> groundtruthOnsets, boolean fastMath)
+            throws IOException {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            SpectrogramCache.update(md, new File(wavFileName));
+            StringBuilder sb = new StringBuilder();
+            for (double onset : groundtruthOnsets) {
+                sb.append(Double.toString(onset)).append('\n');
+            }
+            sb.append(fastMath ? "fast " : "").append(ALGORITHM_VERSION);
+            md.update(sb.toString().getBytes("UTF-8"));
+            return md.digest();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * @return the fingerprint of the inputs of the records
+     */
+    public byte[] getFingerprint() {
+        return fingerprint.clone();
+    }
+
+    /**
+     * @return true if the parameter set is in the store
+     */
+    public synchronized boolean contains(int algorithm, int m, int w, double alpha, double delta) {
+        return done.contains(new Record(algorithm, m, w, alpha, delta, 0, 0, 0));
+    }
+
+    /**
+     * appends a record; it is on disk after the next flush()
+     */
+    public synchronized void append(Record r) throws IOException {
+        out.writeInt(r.algorithm);
+        out.writeInt(r.m);
+        out.writeInt(r.w);
+        out.writeDouble(r.alpha);
+        out.writeDouble(r.delta);
+        out.writeInt(r.tp);
+        out.writeInt(r.fp);
+        out.writeInt(r.fn);
+        records.add(r);
+        done.add(r);
+    }
+
+    /**
+     * the checkpoint: everything appended so far is written to the file
+     */
+    public synchronized void flush() throws IOException {
+        out.flush();
+    }
+
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * @return all records, in the order they were appended
+     */
+    public synchronized List<Record> records() {
+        return new ArrayList<Record>(records);
+    }
+
+    /**
+     * @return the records of an existing store
+     */
+    public static List<Record> read(File file) throws IOException {
+        ResultStore store = new ResultStore(file, null);
+        store.close();
+        return store.records();
+    }
+
+    /**
+     * writes PREFIX.onsets.paramstudy.ALG.eval for every algorithm in the
+     * records, the lines ordered as the loops of ParamStudyRunner: m, w,
+     * delta, alpha
+     */
+    public static void exportEval(List<Record> records, String prefix) throws IOException {
+        List<Record> sorted = new ArrayList<Record>(records);
+        Collections.sort(sorted, new Comparator<Record>() {
+
+            @Override
+            public int compare(Record a, Record b) {
+                if (a.algorithm != b.algorithm) {
+                    return a.algorithm < b.algorithm ? -1 : 1;
+                }
+                if (a.m != b.m) {
+                    return a.m < b.m ? -1 : 1;
+                }
+                if (a.w != b.w) {
+                    return a.w < b.w ? -1 : 1;
+                }
+                if (a.delta != b.delta) {
+                    return Double.compare(a.delta, b.delta);
+                }
+                return Double.compare(a.alpha, b.alpha);
+            }
+        });
+
+        NumberFormat fd = new DecimalFormat("#.###");
+        NumberFormat nd = new DecimalFormat("00");
+        String gnuplotcomment = "";
+        FileWriter outputwriter = null;
+        int algorithm = -1;
+        try {
+            for (Record r : sorted) {
+                if (r.algorithm != algorithm) {
+                    if (outputwriter != null) {
+                        outputwriter.close();
+                    }
+                    algorithm = r.algorithm;
+                    outputwriter = new FileWriter(prefix + ".onsets.paramstudy." + nd.format(algorithm) + ".eval");
+                    outputwriter.append(gnuplotcomment + "m w alpha delta TP FP FN PRECISION RECALL FMEASURE");
+                    outputwriter.append('\n');
+                }
+                OnsetEvaluation e = r.evaluation();
+                outputwriter.append(r.m + " " + r.w + " " + fd.format(r.alpha) + " " + fd.format(r.delta) + " "
+                        + e.getTP() + " " + e.getFP() + " " + e.getFN() + " " + fd.format(e.getPrecision()) + " "
+                        + fd.format(e.getRecall()) + " " + fd.format(e.getFMeasure()));
+                outputwriter.append('\n');
+            }
+        } finally {
+            if (outputwriter != null) {
+                outputwriter.close();
+            }
+        }
+    }
+
+    /**
+     * one evaluated parameter set; equal if the parameters are equal
+     */
+    public static final class Record {
+
+        final int algorithm;
+        final int m;
+        final int w;
+        final double alpha;
+        final double delta;
+        final int tp;
+        final int fp;
+        final int fn;
+
+        public Record(int algorithm, int m, int w, double alpha, double delta, int tp, int fp, int fn) {
+            this.algorithm = algorithm;
+            this.m = m;
+            this.w = w;
+            this.alpha = alpha;
+            this.delta = delta;
+            this.tp = tp;
+            this.fp = fp;
+            this.fn = fn;
+        }
+
+        public Record(int algorithm, int m, int w, double alpha, double delta, OnsetEvaluation e) {
+            this(algorithm, m, w, alpha, delta, e.getTP(), e.getFP(), e.getFN());
+        }
+
+        public OnsetEvaluation evaluation() {
+            return new OnsetEvaluation(tp, fp, fn);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Record)) {
+                return false;
+            }
+            Record r = (Record) o;
+            return algorithm == r.algorithm && m == r.m && w == r.w
+                    && Double.doubleToLongBits(alpha) == Double.doubleToLongBits(r.alpha)
+                    && Double.doubleToLongBits(delta) == Double.doubleToLongBits(r.delta);
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(alpha) * 31 + Double.doubleToLongBits(delta);
+            return ((algorithm * 31 + m) * 31 + w) * 31 + (int) (bits ^ (bits >>> 32));
+        }
+    }
+}
@@ -11,7 +11,6 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.StringTokenizer;
@@ -31,14 +30,14 @@ public class Runner {
      * -o DIR (the directory in which the 2 resultfiles (WAVFILENAME.onsets and WAVEFILENAME.tempo) are written to
      * -g ONSETGROUNDTRUTHFILE (the file including the onset groundtruth, optional!)
      * -t TEMPOGROUNDTRUTHFILE (the file including the tempo groundtruth, optional!)
+     * -c CACHEDIR (directory for cached STFTs, optional!)
+     * -f (fast math: approximated trigonometry, see FastMath, optional!)
      *
      */
     public static void main(String[] args) {
         String wavFileName = new String();
         String shortWavFileName = new String();
         String outputDirectory = new String();
-        String outputOnsetsFileName = new String();
-        String outputTempoFileName = new String();
         String onsetGroundTruthFileName = new String();
         String tempoGroundTruthFileName = new String();
         String odf_plotFileName = null;
@@ -47,7 +46,7 @@ public class Runner {
         boolean hasOnsetGroundTruth = false;
         boolean hasTempoGroundTruth = false;
 
-        OptionParser parser = new OptionParser("qi:o:g:t:p:r:s:");
+        OptionParser parser = new OptionParser("qfi:o:g:t:p:r:s:c:");
         OptionSet options = parser.parse(args);
 
         if (options.has("q")) {
@@ -80,8 +79,6 @@ public class Runner {
         }
 
         shortWavFileName = wavFileName.substring(wavFileName.lastIndexOf("/") + 1, wavFileName.lastIndexOf("."));
-        outputOnsetsFileName = outputDirectory + shortWavFileName + ".onsets";
-        outputTempoFileName = outputDirectory + shortWavFileName + ".tempo";
 
         if (options.has("g")) {
             onsetGroundTruthFileName = options.valueOf("g").toString();
@@ -105,36 +102,70 @@ public class Runner {
             hasTempoGroundTruth = true;
         }
 
-        Processor p = new Processor(wavFileName, 2);
-        p.analyze();
+        SpectrogramCache cache = null;
+        if (options.has("c")) {
+            cache = new SpectrogramCache(new File(options.valueOf("c").toString()));
+        }
+
+        Processor p = new Processor(wavFileName, 2, cache, options.has("f"));
+        run(p, shortWavFileName, outputDirectory,
+                hasOnsetGroundTruth ? onsetGroundTruthFileName : null,
+                hasTempoGroundTruth ? tempoGroundTruthFileName : null,
+                odf_plotFileName, acf_plotFileName, ioi_plotFileName);
+
+        try {
+            p.getMetrics().write(shortWavFileName, outputDirectory + shortWavFileName);
+        } catch (IOException ex) {
+            Logger.getLogger(Runner.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * analyzes with algorithm 2 and writes DIR/NAME.onsets and DIR/NAME.tempo,
+     * the evaluations if the ground truth files are given, and the plot
+     * files that are not null
+     */
+    static void run(Processor p, String shortWavFileName, String outputDirectory,
+            String onsetGroundTruthFileName, String tempoGroundTruthFileName,
+            String odf_plotFileName, String acf_plotFileName, String ioi_plotFileName) {
+        String outputOnsetsFileName = outputDirectory + shortWavFileName + ".onsets";
+        String outputTempoFileName = outputDirectory + shortWavFileName + ".tempo";
+
+        Log.log("Running Analysis...");
+        AnalysisResult result = p.analyze(new AnalysisConfig(2));
 
         Log.log();
+        Metrics.Timer timer = p.getMetrics().start(Metrics.OUTPUT);
         Log.log("Outputting Onset Times to " + outputOnsetsFileName + "...");
-        writeDataToFile(p.getOnsets(), outputOnsetsFileName);
+        writeDataToFile(result.getOnsets(), outputOnsetsFileName);
         Log.log("Outputting Tempo to " + outputTempoFileName + "...");
-        writeDataToFile(p.getTempo(), outputTempoFileName);
+        writeDataToFile(result.getTempo(), outputTempoFileName);
+        timer.stop();
 
-        if (hasOnsetGroundTruth) {
+        timer = p.getMetrics().start(Metrics.EVALUATION);
+        if (onsetGroundTruthFileName != null) {
             String onsetEvalOut = outputDirectory + shortWavFileName + ".onsets.eval";
-            evaluateOnsets(p.getOnsets(), onsetGroundTruthFileName, onsetEvalOut);
+            evaluateOnsets(result.getOnsets(), onsetGroundTruthFileName, onsetEvalOut);
         }
-        if (hasTempoGroundTruth) {
+        if (tempoGroundTruthFileName != null) {
             String tempoEvalOut = outputDirectory + shortWavFileName + ".tempo.eval";
-            evaluateTempo(p.getTempo(), tempoGroundTruthFileName, tempoEvalOut);
+            evaluateTempo(result.getTempo(), tempoGroundTruthFileName, tempoEvalOut);
         }
+        timer.stop();
 
+        timer = p.getMetrics().start(Metrics.OUTPUT);
         if (odf_plotFileName != null) {
-            writeDataToFile(p.onsetDetectionFunction, p.m_audiofile.hopTime, odf_plotFileName);
+            writeDataToFile(result.getDetectionFunction(), p.m_audiofile.hopTime, odf_plotFileName);
         }
 
         if (acf_plotFileName != null) {
-            writeDataToFile(p.acf, p.m_audiofile.hopTime, acf_plotFileName);
+            writeDataToFile(result.getAcf(), p.m_audiofile.hopTime, acf_plotFileName);
         }
 
         if (ioi_plotFileName != null) {
-        //    writeDataToFile(p.ioi.toArray(new int[0]), p.m_audiofile.hopTime, ioi_plotFileName);
+            writeDataToFile(result.getIoi(), p.m_audiofile.hopTime, ioi_plotFileName);
         }
-
+        timer.stop();
     }
 
     /*
@@ -202,71 +233,36 @@ public class Runner {
     }
 
     // Evaluate the Onset Estimations
-    private static void evaluateOnsets(LinkedList<Double> onsets, String onsetGroundTruthFileName, String onsetEvalOut) {
-
-        int TP = 0;
-        int FP = 0;
-        int FN = 0;
-        double precision = 0;
-        double recall = 0;
-        double fmeasure = 0;
+    private static void evaluateOnsets(List<Double> onsets, String onsetGroundTruthFileName, String onsetEvalOut) {
 
-        LinkedList<Double> groundtruthOnsets = new LinkedList<Double>();
+        List<Double> groundtruthOnsets = new LinkedList<Double>();
 
         try {
-            BufferedReader reader = new BufferedReader(new FileReader(onsetGroundTruthFileName));
-            String line;
-
-            while ((line = reader.readLine()) != null) {
-                StringTokenizer st = new StringTokenizer(line);
-                groundtruthOnsets.add(Double.parseDouble(st.nextToken()));
-            }
+            groundtruthOnsets = OnsetEvaluation.readOnsets(onsetGroundTruthFileName);
         } catch (IOException ex) {
             Logger.getLogger(Runner.class.getName()).log(Level.SEVERE, null, ex);
         }
 
-//        Log.log(onsets.size());
-//        Log.log(groundtruthOnsets.size());
-
-        Iterator<Double> it = groundtruthOnsets.iterator();
-        while (it.hasNext()) {
-            double d = it.next();
-            double tmp = findNearest(d, onsets);
-            if (Math.abs(d - tmp) <= 0.05) {
-                onsets.remove(tmp);
-                it.remove();
-                TP++;
-            }
-
-        }
-        FN = groundtruthOnsets.size();
-        FP = onsets.size();
-
-//        Log.log(onsets.size());
-//        Log.log(groundtruthOnsets.size());
-
-        precision = (double) TP / (TP + FP);
-        recall = (double) TP / (TP + FN);
-        fmeasure = (2 * precision * recall) / (precision + recall);
+        OnsetEvaluation e = OnsetEvaluation.evaluate(groundtruthOnsets, onsets);
 
         StringBuilder sb = new StringBuilder();
         sb.append("TP: ");
-        sb.append(TP);
+        sb.append(e.getTP());
         sb.append("\n");
         sb.append("FP: ");
-        sb.append(FP);
+        sb.append(e.getFP());
         sb.append("\n");
         sb.append("FN: ");
-        sb.append(FN);
+        sb.append(e.getFN());
         sb.append("\n");
         sb.append("Precision: ");
-        sb.append(precision);
+        sb.append(e.getPrecision());
         sb.append("\n");
         sb.append("Recall: ");
-        sb.append(recall);
+        sb.append(e.getRecall());
         sb.append("\n");
         sb.append("F-Measure: ");
-        sb.append(fmeasure);
+        sb.append(e.getFMeasure());
 
         Log.log("\nOnset Evaluation: \n" + sb.toString());
         Log.log("Outputting Onset Evaluation to " + onsetEvalOut);
@@ -280,20 +276,6 @@ public class Runner {
         }
     }
 
-    private static double findNearest(double val, LinkedList<Double> list) {
-        double minDist = Double.MAX_VALUE;
-        double retval = 0;
-
-        for (Double d : list) {
-            if (Math.abs(val - d) < minDist) {
-                minDist = Math.abs(val - d);
-                retval = d;
-            }
-        }
-        return retval;
-
-    }
-
     // Evaluate the Tempo Estimation
     private static void evaluateTempo(double tempo, String tempoGroundTruthFileName, String tempoEvalOut) {
         double gtempo = 0;
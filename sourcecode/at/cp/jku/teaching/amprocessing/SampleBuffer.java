@@ -0,0 +1,101 @@
+/*
+ * SampleBuffer.java
+ *
+ * A growable store for the (mono) time domain samples of an audio file.
+ *
+ * The samples are kept in a primitive float array instead of a
+ * LinkedList<Double>, so one sample costs 4 bytes instead of a boxed Double
+ * plus a list node. The decoded samples are 16 bit PCM scaled to [-1, 1],
+ * which a float holds without loss for mono and stereo input.
+ */
+package at.cp.jku.teaching.amprocessing;
+
+import java.util.Arrays;
+
+/**
+ *
+ * @author mru
+ */
+public class SampleBuffer {
+
+    private static final int INITIAL_CAPACITY = 44100;
+    private float[] samples;
+    private int size;
+
+    public SampleBuffer() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public SampleBuffer(int capacity) {
+        samples = new float[Math.max(capacity, 1)];
+        size = 0;
+    }
+
+    public void add(double sample) {
+        if (size == samples.length) {
+            samples = Arrays.copyOf(samples, samples.length * 2);
+        }
+        samples[size++] = (float) sample;
+    }
+
+    /**
+     * number of stored samples
+     */
+    public int size() {
+        return size;
+    }
+
+    public double get(int i) {
+        checkRange(i, 1);
+        return samples[i];
+    }
+
+    /**
+     * copies the samples [from, from + length) into dst, starting at dstOffset
+     */
+    public void get(int from, double[] dst, int dstOffset, int length) {
+        checkRange(from, length);
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = samples[from + i];
+        }
+    }
+
+    /**
+     * copies the samples [from, from + length) into dst, starting at dstOffset
+     */
+    public void get(int from, float[] dst, int dstOffset, int length) {
+        checkRange(from, length);
+        System.arraycopy(samples, from, dst, dstOffset, length);
+    }
+
+    /**
+     * returns a copy of the samples [from, to)
+     */
+    public double[] getRange(int from, int to) {
+        double[] range = new double[to - from];
+        get(from, range, 0, to - from);
+        return range;
+    }
+
+    /**
+     * returns a copy of all samples
+     */
+    public double[] toArray() {
+        return getRange(0, size);
+    }
+
+    /**
+     * releases the unused capacity, called once all samples are added
+     */
+    public void trim() {
+        if (samples.length != size) {
+            samples = Arrays.copyOf(samples, Math.max(size, 1));
+        }
+    }
+
+    private void checkRange(int from, int length) {
+        if (from < 0 || length < 0 || from + length > size) {
+            throw new IndexOutOfBoundsException("Range: " + from + "+" + length + ", Size: " + size);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * SearchSpace.java
+ *
+ * The ranges of the peak picking parameters searched by a ParameterSearch:
+ * m and w are integers, alpha and delta real numbers, all bounds inclusive.
+ *
+ * A point of the unit cube [0, 1)^4 maps to a parameter set with at(), so
+ * the random and Latin hypercube samples of the searches are uniform in
+ * every range.
+ */
+package at.cp.jku.teaching.amprocessing;
+
+/**
+ *
+ * @author mru
+ */
+public final class SearchSpace {
+
+    // the ranges of ParamStudyRunner; its loops (x < 1, x += 0.1) end at
+    // 0.9999999999999999 for alpha and delta
+    public static final SearchSpace GRID = new SearchSpace(2, 5, 2, 5, 0.0, 1.0, -0.1, 1.0);
+    // more than the grid can afford
+    public static final SearchSpace WIDE = new SearchSpace(1, 10, 1, 10, 0.0, 0.99, -0.5, 2.0);
+    final int mMin, mMax;
+    final int wMin, wMax;
+    final double alphaMin, alphaMax;
+    final double deltaMin, deltaMax;
+
+    public SearchSpace(int mMin, int mMax, int wMin, int wMax,
+            double alphaMin, double alphaMax, double deltaMin, double deltaMax) {
+        if (mMin < 1 || mMin > mMax || wMin < 1 || wMin > wMax || alphaMin > alphaMax || deltaMin > deltaMax) {
+            throw new IllegalArgumentException("Empty search space");
+        }
+        this.mMin = mMin;
+        this.mMax = mMax;
+        this.wMin = wMin;
+        this.wMax = wMax;
+        this.alphaMin = alphaMin;
+        this.alphaMax = alphaMax;
+        this.deltaMin = deltaMin;
+        this.deltaMax = deltaMax;
+    }
+
+    /**
+     * parses "mMin:mMax,wMin:wMax,alphaMin:alphaMax,deltaMin:deltaMax"
+     */
+    public static SearchSpace parse(String s) {
+        String[] r = s.split(",");
+        if (r.length != 4) {
+            throw new IllegalArgumentException("Search space: mMin:mMax,wMin:wMax,alphaMin:alphaMax,deltaMin:deltaMax");
+        }
+        String[] m = r[0].split(":");
+        String[] w = r[1].split(":");
+        String[] a = r[2].split(":");
+        String[] d = r[3].split(":");
+        return new SearchSpace(Integer.parseInt(m[0]), Integer.parseInt(m[1]),
+                Integer.parseInt(w[0]), Integer.parseInt(w[1]),
+                Double.parseDouble(a[0]), Double.parseDouble(a[1]),
+                Double.parseDouble(d[0]), Double.parseDouble(d[1]));
+    }
+
+    /**
+     * @param u 4 coordinates in [0, 1)
+     * @return the peak picking parameters of base replaced by the point u
+     */
+    public AnalysisConfig at(AnalysisConfig base, double[] u) {
+        return base.withPeakPicking(integer(mMin, mMax, u[0]), integer(wMin, wMax, u[1]),
+                alphaMin + u[2] * (alphaMax - alphaMin), deltaMin + u[3] * (deltaMax - deltaMin));
+    }
+
+    // every integer of [min, max] gets the same share of [0, 1)
+    private static int integer(int min, int max, double u) {
+        return min + Math.min((int) (u * (max - min + 1)), max - min);
+    }
+
+    /**
+     * @return this space, restricted to the ranges around config: +- dm, dw,
+     * dalpha, ddelta
+     */
+    public SearchSpace around(AnalysisConfig config, int dm, int dw, double dalpha, double ddelta) {
+        return new SearchSpace(
+                Math.max(mMin, config.getM() - dm), Math.min(mMax, config.getM() + dm),
+                Math.max(wMin, config.getW() - dw), Math.min(wMax, config.getW() + dw),
+                Math.max(alphaMin, config.getAlpha() - dalpha), Math.min(alphaMax, config.getAlpha() + dalpha),
+                Math.max(deltaMin, config.getDelta() - ddelta), Math.min(deltaMax, config.getDelta() + ddelta));
+    }
+
+    @Override
+    public String toString() {
+        return mMin + ":" + mMax + "," + wMin + ":" + wMax + "," + alphaMin + ":" + alphaMax + "," + deltaMin + ":" + deltaMax;
+    }
+}
@@ -22,11 +22,15 @@ public class SpectralData {
     // the size of each of the above arrays (= fftSize/2 + 1)
     public int size;
 
-    SpectralData(double[] reBuffer, double[] imBuffer, int fftSize) {
-        size = fftSize / 2 + 1;
+    SpectralData(int size) {
+        this.size = size;
         phases = new double[size];
         unwrappedPhases = new double[size];
         magnitudes = new double[size];
+    }
+
+    SpectralData(double[] reBuffer, double[] imBuffer, int fftSize) {
+        this(fftSize / 2 + 1);
 
         for (int i = 0; i < size; i++) {
             magnitudes[i] = reBuffer[i];
@@ -36,22 +40,38 @@ public class SpectralData {
     }
 
     public void computeUnwrappedPhases(double[] uphases) {
-        double cutoff = Math.PI;
-
+        computeUnwrappedPhases(phases, 0, uphases, 0, unwrappedPhases, 0, size);
+    }
 
+    /**
+     * unwraps size phases starting at phases[off] against the unwrapped
+     * phases of the previous frame starting at uphases[uoff]. the result is
+     * written to out, starting at out[outOff].
+     */
+    static void computeUnwrappedPhases(double[] phases, int off, double[] uphases, int uoff, double[] out, int outOff, int size) {
         for (int i = 0; i < size; i++) {
-            unwrappedPhases[i] = phases[i];
+            out[outOff + i] = unwrap(phases[off + i], uphases[uoff + i]);
+        }
+    }
+
+    /**
+     * unwraps one phase against the unwrapped phase of the same bin in the
+     * previous frame
+     */
+    static double unwrap(final double phase, final double uphase) {
+        double cutoff = Math.PI;
+        double unwrapped = phase;
 
-            double dp = phases[i] - uphases[i];
-            double dps = normphase(dp);
+        double dp = phase - uphase;
+        double dps = normphase(dp);
 
-            if (dps == -Math.PI && dp > 0) {
-                dps = Math.PI;
-            }
-            if (Math.abs(dp) >= cutoff) {
-                unwrappedPhases[i] += (dps - dp);
-            }
+        if (dps == -Math.PI && dp > 0) {
+            dps = Math.PI;
+        }
+        if (Math.abs(dp) >= cutoff) {
+            unwrapped += (dps - dp);
         }
+        return unwrapped;
     }
 
     public static double normphase(final double ph) {
@@ -0,0 +1,273 @@
+/*
+ * Spectrogram.java
+ *
+ * The container for the STFT data of a whole audio file.
+ *
+ * All frames are stored back to back in flat arrays (frames x bins), so
+ * frame n starts at offset(n) in magnitudes, phases and unwrappedPhases.
+ * Accessing a frame is O(1), unlike the LinkedList<SpectralData> used before.
+ *
+ * The first and second phase differences, which the phase based detection
+ * functions are built on, are derived from the phases on first request and
+ * kept until a frame changes.
+ *
+ * A spectrogram created with complex = true also keeps the real and
+ * imaginary parts of the FFT, so that consumers which compare spectra as
+ * vectors (the complex domain detection functions) need no trigonometry.
+ */
+package at.cp.jku.teaching.amprocessing;
+
+import java.util.Arrays;
+
+/**
+ *
+ * @author mru
+ */
+public class Spectrogram {
+
+    private static final int INITIAL_CAPACITY = 256;
+    // number of bins per frame (= fftSize/2 + 1), same as SpectralData.size
+    public final int frameSize;
+    // the magnitudes of all frames, frame n at [offset(n), offset(n) + frameSize)
+    public double[] magnitudes;
+    // the phases of all frames
+    public double[] phases;
+    // the unwrapped phases of all frames
+    public double[] unwrappedPhases;
+    // the total energy of each frame
+    public double[] totalEnergy;
+    // the real and imaginary parts of all frames, null unless complex
+    public double[] real;
+    public double[] imag;
+    private int frameCount;
+    // the phase differences, null until requested
+    private double[] phaseDifferences;
+    private double[] secondPhaseDifferences;
+
+    public Spectrogram(int fftSize) {
+        this(fftSize, INITIAL_CAPACITY);
+    }
+
+    public Spectrogram(int fftSize, int capacity) {
+        this(fftSize, capacity, false);
+    }
+
+    public Spectrogram(int fftSize, boolean complex) {
+        this(fftSize, INITIAL_CAPACITY, complex);
+    }
+
+    /**
+     * @param complex if true, the real and imaginary parts are kept as well
+     */
+    public Spectrogram(int fftSize, int capacity, boolean complex) {
+        frameSize = fftSize / 2 + 1;
+        capacity = Math.max(capacity, 1);
+        magnitudes = new double[capacity * frameSize];
+        phases = new double[capacity * frameSize];
+        unwrappedPhases = new double[capacity * frameSize];
+        totalEnergy = new double[capacity];
+        if (complex) {
+            real = new double[capacity * frameSize];
+            imag = new double[capacity * frameSize];
+        }
+        frameCount = 0;
+    }
+
+    /**
+     * appends one frame.
+     * @param mag the magnitudes, at least frameSize values
+     * @param phase the phases, at least frameSize values
+     */
+    public void add(double[] mag, double[] phase) {
+        add(mag, phase, null, null);
+    }
+
+    /**
+     * appends one frame.
+     * @param re the real parts, at least frameSize values; ignored unless
+     * the spectrogram is complex
+     * @param im the imaginary parts
+     */
+    public void add(double[] mag, double[] phase, double[] re, double[] im) {
+        ensureCapacity(frameCount + 1);
+        invalidate();
+        final int off = offset(frameCount);
+        double energy = 0.0;
+        for (int k = 0; k < frameSize; k++) {
+            magnitudes[off + k] = mag[k];
+            energy += mag[k];
+        }
+        System.arraycopy(phase, 0, phases, off, frameSize);
+        totalEnergy[frameCount] = energy;
+        if (real != null) {
+            System.arraycopy(re, 0, real, off, frameSize);
+            System.arraycopy(im, 0, imag, off, frameSize);
+        }
+
+        // the first frame has no predecessor, its unwrapped phases stay 0
+        if (frameCount > 0) {
+            SpectralData.computeUnwrappedPhases(phases, off, unwrappedPhases, offset(frameCount - 1), unwrappedPhases, off, frameSize);
+        }
+        frameCount++;
+    }
+
+    /**
+     * stores frame n without unwrapping its phases, for code that computes
+     * the frames out of order. the frame must be within size(); call
+     * unwrapPhases() once all frames are set.
+     */
+    void set(int n, double[] mag, double[] phase) {
+        set(n, mag, phase, null, null);
+    }
+
+    /**
+     * same as set(n, mag, phase), re and im are stored if the spectrogram
+     * is complex. the derived planes are invalidated by setSize() and
+     * unwrapPhases(), not per frame, so parallel writers take no lock.
+     */
+    void set(int n, double[] mag, double[] phase, double[] re, double[] im) {
+        final int off = offset(n);
+        double energy = 0.0;
+        for (int k = 0; k < frameSize; k++) {
+            magnitudes[off + k] = mag[k];
+            energy += mag[k];
+        }
+        System.arraycopy(phase, 0, phases, off, frameSize);
+        totalEnergy[n] = energy;
+        if (real != null) {
+            System.arraycopy(re, 0, real, off, frameSize);
+            System.arraycopy(im, 0, imag, off, frameSize);
+        }
+    }
+
+    /**
+     * computes the unwrapped phases of the bins [fromBin, toBin) of all
+     * frames. every bin only depends on its own history, so disjoint bin
+     * ranges may be unwrapped in parallel.
+     */
+    void unwrapPhases(int fromBin, int toBin) {
+        invalidate();
+        for (int k = fromBin; k < toBin; k++) {
+            unwrappedPhases[k] = 0.0;
+        }
+        for (int n = 1; n < frameCount; n++) {
+            final int off = offset(n);
+            for (int k = fromBin; k < toBin; k++) {
+                unwrappedPhases[off + k] = SpectralData.unwrap(phases[off + k], unwrappedPhases[off - frameSize + k]);
+            }
+        }
+    }
+
+    /**
+     * the first phase difference term of every bin, as used by the phase
+     * based detection functions, same layout as phases:
+     * dphi(n) = normalizeAngle(phi(n - 1), phi(n)) - phi(n - 1). 0 for
+     * frame 0.
+     */
+    public synchronized double[] getPhaseDifferences() {
+        if (phaseDifferences == null) {
+            final double[] d = new double[frameCount * frameSize];
+            for (int off = frameSize; off < d.length; off++) {
+                final double phi_1 = phases[off - frameSize];
+                d[off] = SpectralData.normalizeAngle(phi_1, phases[off]) - phi_1;
+            }
+            phaseDifferences = d;
+        }
+        return phaseDifferences;
+    }
+
+    /**
+     * the second phase difference of every bin, same layout as phases:
+     * d2phi(n) = normalizeAngle(dphi(n - 1), dphi(n)) - dphi(n - 1).
+     * 0 for the frames 0 and 1.
+     */
+    public synchronized double[] getSecondPhaseDifferences() {
+        if (secondPhaseDifferences == null) {
+            final double[] dphi = getPhaseDifferences();
+            final double[] d = new double[frameCount * frameSize];
+            for (int off = 2 * frameSize; off < d.length; off++) {
+                final double dphi_1 = dphi[off - frameSize];
+                d[off] = SpectralData.normalizeAngle(dphi_1, dphi[off]) - dphi_1;
+            }
+            secondPhaseDifferences = d;
+        }
+        return secondPhaseDifferences;
+    }
+
+    private synchronized void invalidate() {
+        phaseDifferences = null;
+        secondPhaseDifferences = null;
+    }
+
+    /**
+     * @return true if the real and imaginary parts are kept
+     */
+    public boolean isComplex() {
+        return real != null;
+    }
+
+    /**
+     * number of frames
+     */
+    public int size() {
+        return frameCount;
+    }
+
+    /**
+     * start index of frame n in the flat arrays
+     */
+    public int offset(int n) {
+        return n * frameSize;
+    }
+
+    /**
+     * returns a copy of frame n in the old per-frame representation
+     */
+    public SpectralData get(int n) {
+        if (n < 0 || n >= frameCount) {
+            throw new IndexOutOfBoundsException("Frame: " + n + ", Size: " + frameCount);
+        }
+        final int off = offset(n);
+        SpectralData s = new SpectralData(frameSize);
+        System.arraycopy(magnitudes, off, s.magnitudes, 0, frameSize);
+        System.arraycopy(phases, off, s.phases, 0, frameSize);
+        System.arraycopy(unwrappedPhases, off, s.unwrappedPhases, 0, frameSize);
+        s.totalEnergy = totalEnergy[n];
+        return s;
+    }
+
+    /**
+     * sets the number of frames, for code that fills the arrays directly
+     */
+    void setSize(int frames) {
+        ensureCapacity(frames);
+        invalidate();
+        frameCount = frames;
+    }
+
+    /**
+     * releases the unused capacity, called once all frames are added
+     */
+    public void trim() {
+        if (totalEnergy.length != frameCount) {
+            resize(frameCount);
+        }
+    }
+
+    private void ensureCapacity(int frames) {
+        if (frames > totalEnergy.length) {
+            resize(Math.max(frames, totalEnergy.length * 2));
+        }
+    }
+
+    private void resize(int frames) {
+        magnitudes = Arrays.copyOf(magnitudes, frames * frameSize);
+        phases = Arrays.copyOf(phases, frames * frameSize);
+        unwrappedPhases = Arrays.copyOf(unwrappedPhases, frames * frameSize);
+        totalEnergy = Arrays.copyOf(totalEnergy, frames);
+        if (real != null) {
+            real = Arrays.copyOf(real, frames * frameSize);
+            imag = Arrays.copyOf(imag, frames * frameSize);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * SpectrogramCache.java
+ *
+ * On-disk cache for the STFT of an audio file.
+ *
+ * Every runner decodes the wav file and computes the STFT again, although
+ * the result only depends on the file content and the STFT parameters. The
+ * cache stores the spectrogram in one file per (content hash, fftTime,
+ * hopTime, window) in a cache directory. Cache files are read back through a
+ * memory mapping with one bulk copy per array, no decoding or FFT is needed.
+ *
+ * file layout (little endian):
+ *   int magic, int version, int fftSize, int hopSize, int frameCount,
+ *   int flags, double hopTime,
+ *   double[frameCount * frameSize] magnitudes, phases, unwrappedPhases,
+ *   double[frameCount] totalEnergy,
+ *   if flags & COMPLEX: double[frameCount * frameSize] real, imag
+ */
+package at.cp.jku.teaching.amprocessing;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ *
+ * @author mru
+ */
+public class SpectrogramCache {
+
+    private static final int MAGIC = 0x53504543; // "SPEC"
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 6 * 4 + 8;
+    // flag: the entry contains the real and imaginary parts
+    private static final int COMPLEX = 1;
+    private final File directory;
+
+    public SpectrogramCache(File directory) {
+        this.directory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.log("Could not create cache directory " + directory);
+        }
+    }
+
+    /**
+     * computes the cache key of an audio file for the given STFT parameters
+     * @return the key, or null if the file cannot be read
+     */
+    public String key(File audioFile, double fftTime, double hopTime, int window) {
+        return key(audioFile, fftTime, hopTime, window, false);
+    }
+
+    /**
+     * @param fastMath whether the phases are computed with FastMath
+     * @return the key, or null if the file cannot be read
+     */
+    public String key(File audioFile, double fftTime, double hopTime, int window, boolean fastMath) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            update(md, audioFile);
+            md.update((fftTime + " " + hopTime + " " + window + (fastMath ? " fast" : "")).getBytes("UTF-8"));
+
+            StringBuilder sb = new StringBuilder();
+            for (byte b : md.digest()) {
+                sb.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+            }
+            return sb.toString();
+        } catch (IOException ex) {
+            Log.log("Could not hash " + audioFile + ": " + ex.getMessage());
+            return null;
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * adds the content of a file to a digest
+     */
+    static void update(MessageDigest md, File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[65536];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                md.update(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * loads a cached spectrogram
+     * @return the spectrogram, or null if there is no (valid) entry for key
+     */
+    public Spectrogram load(String key, int fftSize, int hopSize) {
+        return load(key, fftSize, hopSize, false);
+    }
+
+    /**
+     * loads a cached spectrogram
+     * @param complex if true, only an entry with the real and imaginary parts
+     * is a hit
+     * @return the spectrogram, or null if there is no (valid) entry for key
+     */
+    public Spectrogram load(String key, int fftSize, int hopSize, boolean complex) {
+        File file = fileFor(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                    Log.log("Ignoring truncated cache entry " + file);
+                    return null;
+                }
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+                if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                        || buffer.getInt() != fftSize || buffer.getInt() != hopSize) {
+                    Log.log("Ignoring stale cache entry " + file);
+                    return null;
+                }
+                int frameCount = buffer.getInt();
+                int flags = buffer.getInt();
+                buffer.getDouble();
+                if (complex && (flags & COMPLEX) == 0) {
+                    return null;
+                }
+
+                // the header is checked against the file before anything is
+                // allocated; a valid entry is smaller than 2 GB, so bins fits
+                long length = (long) frameCount * (fftSize / 2 + 1);
+                if (frameCount < 0 || channel.size() != HEADER_SIZE + 8 * (arrays(flags) * length + frameCount)) {
+                    Log.log("Ignoring truncated cache entry " + file);
+                    return null;
+                }
+                int bins = (int) length;
+                Spectrogram s = new Spectrogram(fftSize, frameCount, complex);
+                DoubleBuffer data = buffer.asDoubleBuffer();
+                data.get(s.magnitudes, 0, bins);
+                data.get(s.phases, 0, bins);
+                data.get(s.unwrappedPhases, 0, bins);
+                data.get(s.totalEnergy, 0, frameCount);
+                if (complex) {
+                    data.get(s.real, 0, bins);
+                    data.get(s.imag, 0, bins);
+                }
+                s.setSize(frameCount);
+                s.trim();
+                return s;
+            } finally {
+                raf.close();
+            }
+        } catch (IOException ex) {
+            Log.log("Could not read cache entry " + file + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * stores a spectrogram. the entry is written to a temporary file first
+     * and then renamed, so concurrent runners never see half written entries.
+     */
+    public void store(String key, Spectrogram s, int fftSize, int hopSize, double hopTime) {
+        File file = fileFor(key);
+        File tmp = new File(directory, key + "." + System.nanoTime() + ".tmp");
+        int frameCount = s.size();
+        int bins = frameCount * s.frameSize;
+        int flags = s.isComplex() ? COMPLEX : 0;
+        try {
+            RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+            try {
+                FileChannel channel = raf.getChannel();
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                        HEADER_SIZE + 8L * (arrays(flags) * bins + frameCount));
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(MAGIC);
+                buffer.putInt(VERSION);
+                buffer.putInt(fftSize);
+                buffer.putInt(hopSize);
+                buffer.putInt(frameCount);
+                buffer.putInt(flags);
+                buffer.putDouble(hopTime);
+
+                DoubleBuffer data = buffer.asDoubleBuffer();
+                data.put(s.magnitudes, 0, bins);
+                data.put(s.phases, 0, bins);
+                data.put(s.unwrappedPhases, 0, bins);
+                data.put(s.totalEnergy, 0, frameCount);
+                if (s.isComplex()) {
+                    data.put(s.real, 0, bins);
+                    data.put(s.imag, 0, bins);
+                }
+                buffer.force();
+            } finally {
+                raf.close();
+            }
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+            }
+        } catch (IOException ex) {
+            Log.log("Could not write cache entry " + file + ": " + ex.getMessage());
+            tmp.delete();
+        }
+    }
+
+    // the number of per-bin arrays in an entry
+    private static long arrays(int flags) {
+        return (flags & COMPLEX) != 0 ? 5 : 3;
+    }
+
+    private File fileFor(String key) {
+        return new File(directory, key + ".spec");
+    }
+}
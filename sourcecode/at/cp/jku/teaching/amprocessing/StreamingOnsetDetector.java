@@ -0,0 +1,359 @@
+/*
+ * StreamingOnsetDetector.java
+ *
+ * Onset detection on a stream of PCM data.
+ *
+ * Processor needs the whole file before the analysis can start: the peak
+ * picker normalizes over the whole detection function. This class accepts
+ * PCM chunks (pushed byte buffers or an AudioInputStream), computes the STFT
+ * and one detection function value per hop, and reports onsets while the
+ * data is coming in.
+ *
+ * The STFT is the same as in AudioFile, the detection function is computed
+ * by OdfEngine. Only the last 3 frames are kept.
+ *
+ * Peak picking is a causal version of Processor.pickPeaksDixon(): the
+ * mean and standard deviation for the normalization are running statistics
+ * over all values seen so far, and frame n is decided as soon as the w + 1
+ * following values are known. The latency is therefore fixed at w + 1 hops
+ * (plus the window length). Non-finite detection function values (e.g. 0/0
+ * in silent frames) are counted as 0, so they cannot poison the statistics.
+ */
+package at.cp.jku.teaching.amprocessing;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+
+/**
+ *
+ * @author mru
+ */
+public class StreamingOnsetDetector {
+
+    /**
+     * receives the onsets as soon as they are detected
+     */
+    public interface Listener {
+
+        void onset(double time);
+    }
+    // the STFT parameters
+    private final float sampleRate;
+    private final int channels;
+    public final int hopSize;
+    public final int fftSize;
+    public final double hopTime;
+    private final double[] window;
+    private final RealFftPlan fftPlan;
+    private final double[] circBuffer;
+    private final double[] frameBuffer;
+    private final double[] reBuffer;
+    private final double[] imBuffer;
+    private int cbIndex;
+    private int hopFill;
+    // an incomplete sample frame left over from the last push()
+    private final byte[] pending;
+    private int pendingLength;
+    // the last 3 frames of the STFT
+    private final int frameSize;
+    private final double[] magnitudes;
+    private final double[] phases;
+    private int frameCount;
+    // the detection function and the peak picking parameters
+    private final int algorithm;
+    private final int m;
+    private final int w;
+    private final double alpha;
+    private final double delta;
+    private final OdfEngine engine;
+    private final double[] values = new double[Odf.COUNT + 1];
+    // the last m * w + w + 2 detection function values
+    private final double[] odf;
+    // running mean and variance (Welford) of the detection function
+    private long odfCount;
+    private double odfMean;
+    private double odfM2;
+    private double ga_next = Double.MIN_VALUE;
+    private final Listener listener;
+    private final LinkedList<Double> onsets = new LinkedList<Double>();
+
+    /**
+     * creates a detector with the STFT parameters of Processor and the
+     * default peak picking parameters of the algorithm
+     * @param listener receives the onsets, may be null
+     */
+    public StreamingOnsetDetector(float sampleRate, int channels, int algorithm, Listener listener) {
+        // the arguments are evaluated in order, the check comes first
+        this(sampleRate, channels, Processor.FFT_TIME, Processor.HOP_TIME, checkAlgorithm(algorithm),
+                Odf.DEFAULT_M[algorithm], Odf.DEFAULT_W[algorithm],
+                Odf.DEFAULT_ALPHA[algorithm], Odf.DEFAULT_DELTA[algorithm], listener);
+    }
+
+    /**
+     * @param fftTime the window length in seconds
+     * @param hopTime the hop time in seconds
+     * @param algorithm the detection function, one of the constants in Odf
+     * @param m, w, alpha, delta the peak picking parameters, see Processor.pickPeaksDixon()
+     * @param listener receives the onsets, may be null
+     */
+    public StreamingOnsetDetector(float sampleRate, int channels, double fftTime, double hopTime,
+            int algorithm, int m, int w, double alpha, double delta, Listener listener) {
+        checkAlgorithm(algorithm);
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.hopSize = AudioFile.hopSize(sampleRate, hopTime);
+        this.hopTime = hopSize / sampleRate;
+        this.fftSize = AudioFile.fftSize(sampleRate, fftTime);
+        this.window = AudioFile.analysisWindow(fftSize);
+        this.fftPlan = new RealFftPlan(fftSize);
+        this.circBuffer = new double[fftSize];
+        this.frameBuffer = new double[fftSize];
+        this.reBuffer = new double[fftSize / 2 + 1];
+        this.imBuffer = new double[fftSize / 2 + 1];
+        this.pending = new byte[channels * 2];
+
+        this.frameSize = fftSize / 2 + 1;
+        this.magnitudes = new double[3 * frameSize];
+        this.phases = new double[3 * frameSize];
+
+        this.algorithm = algorithm;
+        this.m = m;
+        this.w = w;
+        this.alpha = alpha;
+        this.delta = delta;
+        this.engine = new OdfEngine(algorithm);
+        this.odf = new double[m * w + w + 2];
+        this.listener = listener;
+    }
+
+    private static int checkAlgorithm(int algorithm) {
+        if (algorithm < 1 || algorithm > Odf.COUNT) {
+            throw new IllegalArgumentException("Unknown algorithm: " + algorithm);
+        }
+        return algorithm;
+    }
+
+    /**
+     * @return the time in seconds between the end of the window of a frame
+     * and the moment its onset is reported
+     */
+    public double getLatency() {
+        return (w + 1) * hopTime;
+    }
+
+    /**
+     * @return all onsets (in seconds) detected so far
+     */
+    public LinkedList<Double> getOnsets() {
+        return onsets;
+    }
+
+    /**
+     * processes a chunk of 16 bit signed little endian PCM data. the chunk
+     * does not need to end on a sample boundary.
+     */
+    public void push(byte[] buffer, int offset, int length) {
+        final int frameBytes = channels * 2;
+        int i = offset;
+        final int end = offset + length;
+
+        if (pendingLength > 0) {
+            while (pendingLength < frameBytes && i < end) {
+                pending[pendingLength++] = buffer[i++];
+            }
+            if (pendingLength < frameBytes) {
+                return;
+            }
+            addSample(pending, 0);
+            pendingLength = 0;
+        }
+        for (; i + frameBytes <= end; i += frameBytes) {
+            addSample(buffer, i);
+        }
+        while (i < end) {
+            pending[pendingLength++] = buffer[i++];
+        }
+    }
+
+    /**
+     * reads and processes a stream until it ends
+     * @throws IllegalArgumentException if the stream does not have the
+     * sample rate and channel count of this detector
+     */
+    public void process(AudioInputStream in) throws IOException {
+        AudioInputStream pcm = AudioFile.toPcm16(in);
+        AudioFormat format = pcm.getFormat();
+        if (format.getSampleRate() != sampleRate || format.getChannels() != channels) {
+            throw new IllegalArgumentException("Stream format does not match: " + format);
+        }
+        process((InputStream) pcm);
+    }
+
+    /**
+     * reads and processes raw 16 bit signed little endian PCM data until the
+     * stream ends
+     */
+    public void process(InputStream in) throws IOException {
+        byte[] buffer = new byte[hopSize * channels * 2];
+        int bytesRead;
+        while ((bytesRead = in.read(buffer)) > 0) {
+            push(buffer, 0, bytesRead);
+        }
+    }
+
+    // averages the channels of one sample frame to mono, see AudioFile.getFrame()
+    private void addSample(byte[] b, int i) {
+        double sample;
+        switch (channels) {
+            case 1:
+                sample = ((b[i + 1] << 8) | (b[i] & 0xff)) / 32768.0;
+                break;
+            case 2:
+                sample = (((b[i + 1] << 8) | (b[i] & 0xff))
+                        + ((b[i + 3] << 8) | (b[i + 2] & 0xff))) / 65536.0;
+                break;
+            default:
+                sample = 0;
+                for (int j = 0; j < channels; j++, i += 2) {
+                    sample += (b[i + 1] << 8) | (b[i] & 0xff);
+                }
+                sample /= 32768.0 * channels;
+        }
+        circBuffer[cbIndex++] = sample;
+        if (cbIndex == fftSize) {
+            cbIndex = 0;
+        }
+        if (++hopFill == hopSize) {
+            hopFill = 0;
+            addFrame();
+        }
+    }
+
+    private void addFrame() {
+        for (int i = 0; i < fftSize; i++) {
+            frameBuffer[i] = window[i] * circBuffer[cbIndex];
+            if (++cbIndex == fftSize) {
+                cbIndex = 0;
+            }
+        }
+        fftPlan.magnitudePhaseFFT(frameBuffer, reBuffer, imBuffer);
+
+        final int t = frameCount++;
+        System.arraycopy(reBuffer, 0, magnitudes, slot(t), frameSize);
+        System.arraycopy(imBuffer, 0, phases, slot(t), frameSize);
+
+        double value = detectionFunction(t);
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            value = 0.0;
+        }
+        addValue(t, value);
+    }
+
+    private int slot(int n) {
+        return (n % 3) * frameSize;
+    }
+
+    private double detectionFunction(int n) {
+        final int n_0 = slot(n);
+        final int n_1 = n >= 1 ? slot(n - 1) : 0;
+        final int n_2 = n >= 2 ? slot(n - 2) : 0;
+        engine.frame(magnitudes, phases, n, n_0, n_1, n_2, frameSize, values);
+        return values[algorithm];
+    }
+
+    private void addValue(int t, double value) {
+        odf[t % odf.length] = value;
+
+        odfCount++;
+        double d = value - odfMean;
+        odfMean += d / odfCount;
+        odfM2 += d * (value - odfMean);
+
+        // frame n is decided once the w + 1 following values are known
+        int n = t - w - 1;
+        if (n >= w * m) {
+            pickPeak(n);
+        }
+    }
+
+    private double normalized(int k, double stddev) {
+        return (odf[k % odf.length] - odfMean) / stddev;
+    }
+
+    private void pickPeak(int n) {
+        final double stddev = Math.sqrt(odfM2 / odfCount);
+        if (stddev == 0) {
+            return;
+        }
+        final double d_n = normalized(n, stddev);
+
+        double ga = ga_next;
+        ga_next = Math.max(d_n, alpha * ga + (1.0 - alpha) * d_n);
+        if (d_n < ga) {
+            return;
+        }
+
+        for (int k = n - w; k <= n + w; k++) {
+            if (k != n && d_n < normalized(k, stddev)) {
+                return;
+            }
+        }
+
+        double sum1 = 0.0;
+        for (int k = n - m * w; k <= n + w; k++) {
+            sum1 += normalized(k, stddev);
+        }
+        sum1 = delta + (sum1 / (m * w + w + 1));
+        if (d_n < sum1) {
+            return;
+        }
+
+        double time = n * hopTime;
+        onsets.add(time);
+        if (listener != null) {
+            listener.onset(time);
+        }
+    }
+
+    /*
+     * Options:
+     * -i FILE (the audio file to analyze, "-" reads an audio stream from stdin)
+     * -a ALGORITHM (the detection function, 1..10, default 2)
+     *
+     * prints every onset time (in seconds) as soon as it is detected
+     */
+    public static void main(String[] args) throws IOException, UnsupportedAudioFileException {
+        OptionParser parser = new OptionParser("i:a:");
+        OptionSet options = parser.parse(args);
+
+        if (!options.has("i")) {
+            Log.log("Inputfile required! (-i INPUTFILE)");
+            System.exit(1);
+        }
+        String input = options.valueOf("i").toString();
+        int algorithm = options.has("a") ? Integer.parseInt(options.valueOf("a").toString()) : Odf.SPECTRAL_FLUX;
+
+        AudioInputStream in = input.equals("-")
+                ? AudioSystem.getAudioInputStream(new BufferedInputStream(System.in))
+                : AudioSystem.getAudioInputStream(new File(input));
+        AudioFormat format = in.getFormat();
+
+        StreamingOnsetDetector detector = new StreamingOnsetDetector(format.getSampleRate(), format.getChannels(), algorithm,
+                new Listener() {
+
+                    public void onset(double time) {
+                        System.out.println(time);
+                    }
+                });
+        detector.process(in);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * SuccessiveHalvingSearch.java
+ *
+ * Successive halving across tracks: many Latin hypercube samples are first
+ * evaluated on a few tracks, only the best 1 / ETA of them go on to the next
+ * round, which evaluates them on ETA times as many tracks; the last round
+ * uses all tracks. Bad parameter sets are dropped after a few cheap
+ * evaluations, the budget goes to the promising ones.
+ */
+package at.cp.jku.teaching.amprocessing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ *
+ * @author mru
+ */
+public class SuccessiveHalvingSearch extends ParameterSearch {
+
+    // the fraction kept per round is 1 / ETA
+    public static final int ETA = 3;
+    private final int samples;
+
+    public SuccessiveHalvingSearch(SearchSpace space, List<ParameterSweep> sweeps, List<List<Double>> groundtruth,
+            ExecutorService pool, long seed, int samples) {
+        super(space, sweeps, groundtruth, pool, seed);
+        if (samples < 1) {
+            throw new IllegalArgumentException("At least one sample required: " + samples);
+        }
+        this.samples = samples;
+    }
+
+    @Override
+    public Result search() throws InterruptedException, ExecutionException {
+        List<Candidate> survivors = latinHypercube(samples);
+
+        int rounds = 0;
+        for (int n = survivors.size(); n > 1; n = (n + ETA - 1) / ETA) {
+            rounds++;
+        }
+
+        for (int round = 0; survivors.size() > 1; round++) {
+            int tracks = (int) Math.ceil(tracks() * Math.pow(ETA, round + 1 - rounds));
+            tracks = Math.max(1, Math.min(tracks(), tracks));
+            evaluate(survivors, tracks);
+            sort(survivors, tracks);
+            survivors = new ArrayList<Candidate>(survivors.subList(0, (survivors.size() + ETA - 1) / ETA));
+        }
+
+        evaluate(survivors, tracks());
+        return result(survivors);
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * WorkQueue.java
+ *
+ * A queue of parameter study work units in a shared directory, for
+ * QueueRunner: one coordinator fills it, any number of worker JVMs on any
+ * number of machines that see the directory take units until all are done.
+ *
+ * A unit is one row (m, w) of the grid of ParamStudyRunner, for one track
+ * and one algorithm; it is a file in todo/ named TRACK.ALG.M.W, holding the
+ * paths of the wav and the onset file. A worker claims a unit by renaming
+ * it to claimed/UNIT#WORKER, which only one worker can do. The results are
+ * written to results/UNIT#WORKER.tmp (a ResultStore) and renamed to
+ * results/UNIT.results, then the unit is marked in done/ (or failed/).
+ *
+ * A worker that dies leaves its claim behind; the coordinator puts claims
+ * that have not been touched (see touch()) for a timeout back to todo/. If
+ * the worker was only slow, the unit is computed twice, with the same
+ * results.
+ *
+ * READY is written last by the coordinator and holds the number of units.
+ */
+package at.cp.jku.teaching.amprocessing;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ *
+ * @author mru
+ */
+public class WorkQueue {
+
+    private final File directory;
+    private final File todo;
+    private final File claimed;
+    private final File done;
+    private final File failed;
+    private final File results;
+    private final File ready;
+    private final Random random = new Random();
+
+    public WorkQueue(File directory) {
+        this.directory = directory;
+        this.todo = new File(directory, "todo");
+        this.claimed = new File(directory, "claimed");
+        this.done = new File(directory, "done");
+        this.failed = new File(directory, "failed");
+        this.results = new File(directory, "results");
+        this.ready = new File(directory, "READY");
+    }
+
+    /**
+     * puts the units into the queue, except the ones already in it (a
+     * restarted coordinator), and marks the queue ready
+     */
+    public void create(List<Unit> units) throws IOException {
+        File incoming = new File(directory, "new");
+        for (File d : new File[]{todo, claimed, done, failed, results, incoming}) {
+            if (!d.isDirectory() && !d.mkdirs()) {
+                throw new IOException("Cannot create " + d);
+            }
+        }
+
+        Set<String> known = new HashSet<String>();
+        known.addAll(Arrays.asList(todo.list()));
+        known.addAll(Arrays.asList(done.list()));
+        known.addAll(Arrays.asList(failed.list()));
+        for (String claim : claimed.list()) {
+            known.add(unitName(claim));
+        }
+
+        for (Unit u : units) {
+            if (known.contains(u.name)) {
+                continue;
+            }
+            // written completely before a worker can see it
+            File f = new File(incoming, u.name);
+            FileWriter writer = new FileWriter(f);
+            try {
+                writer.append(u.wav);
+                writer.append('\n');
+                writer.append(u.onsets);
+                writer.append('\n');
+            } finally {
+                writer.close();
+            }
+            if (!f.renameTo(new File(todo, u.name))) {
+                throw new IOException("Cannot queue " + u.name);
+            }
+        }
+
+        FileWriter writer = new FileWriter(ready);
+        try {
+            writer.append(Integer.toString(units.size()));
+            writer.append('\n');
+        } finally {
+            writer.close();
+        }
+    }
+
+    public boolean isReady() {
+        return ready.exists();
+    }
+
+    /**
+     * @return true if every unit is done or failed
+     */
+    public boolean isFinished() throws IOException {
+        if (!isReady()) {
+            return false;
+        }
+        // a unit computed twice may be both done and failed
+        Set<String> finished = new HashSet<String>(Arrays.asList(done.list()));
+        finished.addAll(Arrays.asList(failed.list()));
+        return finished.size() >= size();
+    }
+
+    /**
+     * @return the number of units
+     */
+    public int size() throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(ready));
+        try {
+            return Integer.parseInt(reader.readLine().trim());
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @return the number of units done, failed, claimed and to do
+     */
+    public int[] count() {
+        return new int[]{done.list().length, failed.list().length, claimed.list().length, todo.list().length};
+    }
+
+    /**
+     * @return the units that failed and were not done by another worker
+     */
+    public List<String> failed() {
+        List<String> names = new ArrayList<String>(Arrays.asList(failed.list()));
+        names.removeAll(Arrays.asList(done.list()));
+        return names;
+    }
+
+    /**
+     * claims a unit, one of the track if there is one left (its STFT is
+     * already computed), else a random one
+     * @return null if there is nothing to do now
+     */
+    public Unit claim(String worker, String track) throws IOException {
+        List<String> names = new ArrayList<String>(Arrays.asList(todo.list()));
+        while (!names.isEmpty()) {
+            int i = -1;
+            if (track != null) {
+                for (int j = 0; j < names.size(); j++) {
+                    if (names.get(j).startsWith(track + ".")) {
+                        i = j;
+                        break;
+                    }
+                }
+            }
+            if (i < 0) {
+                i = random.nextInt(names.size());
+            }
+            String name = names.remove(i);
+            File claim = new File(claimed, name + "#" + worker);
+            if (new File(todo, name).renameTo(claim)) {
+                // the age of the claim, for requeue()
+                claim.setLastModified(System.currentTimeMillis());
+                return read(name, claim);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * the heartbeat of a worker: a claim is only put back when it has not
+     * been touched for the timeout
+     * @return false if the claim was put back in the meantime
+     */
+    public boolean touch(Unit u) {
+        return u.claim.setLastModified(System.currentTimeMillis());
+    }
+
+    private static Unit read(String name, File f) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(f));
+        try {
+            String wav = reader.readLine();
+            String onsets = reader.readLine();
+            String track = unitTrack(name);
+            String[] p = name.substring(track.length() + 1).split("\\.");
+            Unit u = new Unit(track, Integer.parseInt(p[0]), Integer.parseInt(p[1]), Integer.parseInt(p[2]), wav, onsets);
+            u.claim = f;
+            return u;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * the result store the worker writes for the unit
+     */
+    public File temporaryResults(Unit u) {
+        return new File(results, u.claim.getName() + ".tmp");
+    }
+
+    /**
+     * publishes the results of temporaryResults() and marks the unit done
+     */
+    public void complete(Unit u) throws IOException {
+        File f = new File(results, u.name + ".results");
+        f.delete();
+        if (!temporaryResults(u).renameTo(f)) {
+            throw new IOException("Cannot publish the results of " + u.name);
+        }
+        mark(u, done, "");
+    }
+
+    /**
+     * marks the unit failed, with the reason
+     */
+    public void fail(Unit u, Exception ex) throws IOException {
+        temporaryResults(u).delete();
+        mark(u, failed, ex.toString());
+    }
+
+    private void mark(Unit u, File dir, String text) throws IOException {
+        FileWriter writer = new FileWriter(new File(dir, u.name));
+        try {
+            writer.append(text);
+        } finally {
+            writer.close();
+        }
+        // gone if the coordinator put it back in the meantime
+        u.claim.delete();
+    }
+
+    /**
+     * puts the claims older than timeout back to todo/
+     * @return the number of units put back
+     */
+    public int requeue(long timeoutMillis) {
+        int n = 0;
+        for (File claim : claimed.listFiles()) {
+            if (System.currentTimeMillis() - claim.lastModified() > timeoutMillis
+                    && claim.renameTo(new File(todo, unitName(claim.getName())))) {
+                Log.log("Requeued " + claim.getName());
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private static String unitName(String claim) {
+        return claim.substring(0, claim.indexOf('#'));
+    }
+
+    /**
+     * @return the results of all finished units of the track
+     */
+    public List<File> results(String track) {
+        List<File> files = new ArrayList<File>();
+        for (File f : results.listFiles()) {
+            String name = f.getName();
+            if (name.endsWith(".results") && unitTrack(name.substring(0, name.length() - ".results".length())).equals(track)) {
+                files.add(f);
+            }
+        }
+        return files;
+    }
+
+    // TRACK of TRACK.ALG.M.W, the track may contain dots
+    private static String unitTrack(String name) {
+        int i = name.length();
+        for (int k = 0; k < 3; k++) {
+            i = name.lastIndexOf('.', i - 1);
+        }
+        return name.substring(0, i);
+    }
+
+    /**
+     * one row (m, w) of the parameter study of one track and algorithm
+     */
+    public static final class Unit {
+
+        final String name;
+        final String track;
+        final int algorithm;
+        final int m;
+        final int w;
+        final String wav;
+        final String onsets;
+        private File claim;
+
+        public Unit(String track, int algorithm, int m, int w, String wav, String onsets) {
+            this.name = track + "." + algorithm + "." + m + "." + w;
+            this.track = track;
+            this.algorithm = algorithm;
+            this.m = m;
+            this.w = w;
+            this.wav = wav;
+            this.onsets = onsets;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * VectorOdfKernels.java
+ *
+ * The reductions of OdfKernels with the Vector API, in vectors of the
+ * preferred width of the CPU (4 doubles with AVX2, 8 with AVX-512), with
+ * one accumulator vector per sum; the bins after the last whole vector are
+ * summed one by one.
+ *
+ * Needs a JDK 16 or newer and --add-modules jdk.incubator.vector, at
+ * compile and at run time; see OdfKernels for how it is loaded.
+ */
+package at.cp.jku.teaching.amprocessing;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ *
+ * @author mru
+ */
+final class VectorOdfKernels extends OdfKernels {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+    // 0, 1, ..., LANES - 1, the bin offsets of the lanes
+    private static final DoubleVector IOTA = DoubleVector.zero(SPECIES).addIndex(1);
+
+    VectorOdfKernels() {
+    }
+
+    @Override
+    double flux(final double[] mag, final int n_0, final int n_1, final int size) {
+        final int bound = SPECIES.loopBound(size);
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int k = 0;
+        for (; k < bound; k += LANES) {
+            final DoubleVector m_0 = DoubleVector.fromArray(SPECIES, mag, n_0 + k).abs();
+            final DoubleVector m_1 = DoubleVector.fromArray(SPECIES, mag, n_1 + k).abs();
+            acc = acc.add(m_0.sub(m_1).max(0.0));
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; k < size; k++) {
+            sum += Odf.halfRect(Math.abs(mag[n_0 + k]) - Math.abs(mag[n_1 + k]));
+        }
+        return sum;
+    }
+
+    @Override
+    void phaseDeviation(final double[] mag, final double[] d2phi, final int n_0, final int size, final double[] sums) {
+        final int bound = SPECIES.loopBound(size);
+        DoubleVector dphi_acc = DoubleVector.zero(SPECIES);
+        DoubleVector weighted_acc = DoubleVector.zero(SPECIES);
+        DoubleVector mag_acc = DoubleVector.zero(SPECIES);
+        int k = 0;
+        for (; k < bound; k += LANES) {
+            final DoubleVector m = DoubleVector.fromArray(SPECIES, mag, n_0 + k);
+            final DoubleVector d = DoubleVector.fromArray(SPECIES, d2phi, n_0 + k);
+            dphi_acc = dphi_acc.add(d.abs());
+            weighted_acc = weighted_acc.add(m.mul(d).abs());
+            mag_acc = mag_acc.add(m.abs());
+        }
+        double dphi_sum = dphi_acc.reduceLanes(VectorOperators.ADD);
+        double weighted_sum = weighted_acc.reduceLanes(VectorOperators.ADD);
+        double mag_sum = mag_acc.reduceLanes(VectorOperators.ADD);
+        for (; k < size; k++) {
+            final double m = mag[n_0 + k];
+            final double d = d2phi[n_0 + k];
+            dphi_sum += Math.abs(d);
+            weighted_sum += Math.abs(m * d);
+            mag_sum += Math.abs(m);
+        }
+        sums[0] = dphi_sum;
+        sums[1] = weighted_sum;
+        sums[2] = mag_sum;
+    }
+
+    @Override
+    void hfc(final double[] mag, final int n_0, final int from, final int to, final double[] sums) {
+        final int bound = from + SPECIES.loopBound(to - from);
+        DoubleVector hfc1_acc = DoubleVector.zero(SPECIES);
+        DoubleVector energy_acc = DoubleVector.zero(SPECIES);
+        DoubleVector hfc2_acc = DoubleVector.zero(SPECIES);
+        DoubleVector kv = IOTA.add(from);
+        int k = from;
+        for (; k < bound; k += LANES) {
+            final DoubleVector m = DoubleVector.fromArray(SPECIES, mag, n_0 + k);
+            final DoubleVector power = m.mul(m);
+            hfc1_acc = hfc1_acc.add(power.mul(kv));
+            energy_acc = energy_acc.add(power);
+            hfc2_acc = hfc2_acc.add(m.abs().mul(kv).mul(kv));
+            kv = kv.add(LANES);
+        }
+        double hfc1 = hfc1_acc.reduceLanes(VectorOperators.ADD);
+        double energy = energy_acc.reduceLanes(VectorOperators.ADD);
+        double hfc2 = hfc2_acc.reduceLanes(VectorOperators.ADD);
+        for (; k < to; k++) {
+            final double m = mag[n_0 + k];
+            hfc1 += m * m * k;
+            energy += m * m;
+            hfc2 += Math.abs(m) * k * k;
+        }
+        sums[0] = hfc1;
+        sums[1] = energy;
+        sums[2] = hfc2;
+    }
+}